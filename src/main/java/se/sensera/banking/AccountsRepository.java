@@ -1,4 +1,28 @@
 package se.sensera.banking;
 
+import java.util.Optional;
+
 public interface AccountsRepository extends Repository<Account,String> {
+
+    default Optional<UniqueIndex<String, String>> accountNameIndex() {
+        return Optional.empty();
+    }
+
+    /**
+     * Accounts a user owns or has been added to, keyed by user id.
+     */
+    default Optional<LookupIndex<String, Account>> accountsByUserIndex() {
+        return Optional.empty();
+    }
+
+    /**
+     * Accounts whose lower-cased name contains the searched text.
+     */
+    default Optional<LookupIndex<String, Account>> accountNameSearchIndex() {
+        return Optional.empty();
+    }
+
+    default Optional<OrderedIndex<Account>> orderedIndex(AccountService.SortOrder sortOrder) {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,9 @@
+package se.sensera.banking;
+
+/**
+ * Source of ids for new users, accounts and transactions. Ids must be unique, and ids generated later
+ * should sort after ids generated earlier, so that storage ordered by id is also ordered by time.
+ */
+public interface IdGenerator {
+    String nextId();
+}
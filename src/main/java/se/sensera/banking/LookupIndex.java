@@ -0,0 +1,10 @@
+package se.sensera.banking;
+
+import java.util.stream.Stream;
+
+/**
+ * Index that finds the entities of a repository matching a key without scanning all of them.
+ */
+public interface LookupIndex<K, E> {
+    Stream<E> find(K key);
+}
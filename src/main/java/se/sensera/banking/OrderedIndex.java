@@ -0,0 +1,15 @@
+package se.sensera.banking;
+
+import java.util.stream.Stream;
+
+/**
+ * Index keeping the entities of a repository ordered by a sort key and then by id.
+ */
+public interface OrderedIndex<E> {
+
+    /**
+     * Entities in order, starting right after the position ({@code key}, {@code id}), or from the first entity
+     * when {@code id} is null.
+     */
+    Stream<E> after(String key, String id);
+}
@@ -0,0 +1,19 @@
+package se.sensera.banking;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated listing. {@code next} is an opaque continuation token to pass to get the
+ * following page, or null when this is the last page.
+ */
+@Value
+public class Page<E> {
+    List<E> entities;
+    String next;
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
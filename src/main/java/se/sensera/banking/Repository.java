@@ -1,12 +1,23 @@
 package se.sensera.banking;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public interface Repository<E extends Repository.Entity<I>,I> {
     Optional<E> getEntityById(I id);
     Stream<E> all();
     E save(E entity);
+
+    /**
+     * Saves all entities as one group write where the repository supports it, one at a time otherwise.
+     */
+    default List<E> saveAll(List<E> entities) {
+        return entities.stream()
+                .map(this::save)
+                .collect(Collectors.toList());
+    }
     E delete(E entity);
 
     interface Entity<I> {
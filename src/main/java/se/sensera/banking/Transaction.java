@@ -1,12 +1,29 @@
 package se.sensera.banking;
 
+import se.sensera.banking.utils.Cents;
+
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 public interface Transaction extends Repository.Entity<String> {
 
     String getId();
     Date getCreated();
+
+    /**
+     * Whole minutes since the epoch when the transaction was created, rounded down.
+     */
+    default long getCreatedEpochMinute() {
+        return Math.floorDiv(getCreated().getTime(), TimeUnit.MINUTES.toMillis(1));
+    }
     User getUser();
     Account getAccount();
     double getAmount();
+
+    /**
+     * The amount in cents, exact where {@link #getAmount()} is not.
+     */
+    default long getAmountInCents() {
+        return Cents.ofAmount(getAmount());
+    }
 }
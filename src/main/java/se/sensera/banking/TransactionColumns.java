@@ -0,0 +1,33 @@
+package se.sensera.banking;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Transactions kept as columns of primitive values, so that they can be summed and read through without
+ * creating a {@link Transaction} for each of them.
+ */
+public interface TransactionColumns {
+
+    /**
+     * Sum in cents of the transactions of the account created at or before {@code createdAtMostMillis}.
+     */
+    default long sumInCents(String accountId, long createdAtMostMillis) {
+        return sumInCents(List.of(accountId), Long.MIN_VALUE, createdAtMostMillis);
+    }
+
+    /**
+     * Sum in cents of the transactions of any of the accounts created from {@code createdFromMillis} up to
+     * and including {@code createdToMillis}.
+     */
+    long sumInCents(Collection<String> accountIds, long createdFromMillis, long createdToMillis);
+
+    /**
+     * Passes every transaction to {@code row}, in the order they were first saved.
+     */
+    void forEach(Row row);
+
+    interface Row {
+        void accept(String accountId, long createdMillis, long amountInCents);
+    }
+}
@@ -0,0 +1,15 @@
+package se.sensera.banking;
+
+import lombok.Value;
+
+/**
+ * One transaction to create with {@link TransactionService#createTransactions}, with the same arguments as
+ * {@link TransactionService#createTransaction}.
+ */
+@Value
+public class TransactionRequest {
+    String created;
+    String userId;
+    String accountId;
+    double amount;
+}
@@ -0,0 +1,25 @@
+package se.sensera.banking;
+
+import lombok.Value;
+import se.sensera.banking.exceptions.UseException;
+
+/**
+ * Outcome of one {@link TransactionRequest}: either the created transaction or the reason it was refused.
+ */
+@Value
+public class TransactionResult {
+    Transaction transaction;
+    UseException error;
+
+    public static TransactionResult success(Transaction transaction) {
+        return new TransactionResult(transaction, null);
+    }
+
+    public static TransactionResult failure(UseException error) {
+        return new TransactionResult(null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
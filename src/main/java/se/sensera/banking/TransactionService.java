@@ -2,12 +2,52 @@ package se.sensera.banking;
 
 import se.sensera.banking.exceptions.UseException;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
 
 public interface TransactionService {
     Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException;
 
+    /**
+     * Creates a transaction once per idempotency key of the user. A retry with a key the user has used before
+     * gets the transaction created the first time instead of a new one, and a key used again for another
+     * account or amount is refused as {@code IDEMPOTENCY_KEY_REUSED}. Keys are remembered for a limited time only.
+     */
+    Transaction createTransaction(String idempotencyKey, String created, String userId, String accountId, double amount) throws UseException;
+
+    /**
+     * Creates the requested transactions, giving one result per request in the same order. Requests on the same
+     * account are funded in the order given, and a refused request does not stop the others. Requests the
+     * repository fails to save are refused as {@code NOT_SAVED}, those it did save keep their transactions.
+     */
+    List<TransactionResult> createTransactions(List<TransactionRequest> requests);
+
+    /**
+     * Moves a positive amount from one account to another, as a withdrawal and a deposit that are saved together.
+     * The user must be allowed on the account the money is taken from.
+     */
+    Transfer transfer(String created, String userId, String fromAccountId, String toAccountId, double amount) throws UseException;
+
     double sum(String created, String userId, String accountId) throws UseException;
 
+    /**
+     * Exact balance in cents of the account at the given time, of which {@link #sum} is a view.
+     */
+    long sumInCents(String created, String userId, String accountId) throws UseException;
+
+    /**
+     * Sum in cents of the transactions created from {@code from} up to and including {@code to}, on all
+     * accounts the user owns or has been added to. Such sums are not kept up to date like balances are, every
+     * call scans the transactions.
+     */
+    long periodSumInCents(String userId, String from, String to) throws UseException;
+
     void addMonitor(Consumer<Transaction> monitor);
+
+    /**
+     * Adds a monitor that is given the created transactions in batches of at most {@code maxBatch}, waiting
+     * at most {@code maxDelay} for a batch to fill. Transactions of one account come in the order they were created.
+     */
+    void addBatchMonitor(Consumer<List<Transaction>> monitor, int maxBatch, Duration maxDelay);
 }
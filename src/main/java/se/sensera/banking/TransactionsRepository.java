@@ -1,4 +1,10 @@
 package se.sensera.banking;
 
+import java.util.Optional;
+
 public interface TransactionsRepository extends Repository<Transaction,String> {
+
+    default Optional<TransactionColumns> columns() {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,12 @@
+package se.sensera.banking;
+
+import lombok.Value;
+
+/**
+ * The two transactions of a transfer between accounts, saved together.
+ */
+@Value
+public class Transfer {
+    Transaction debit;
+    Transaction credit;
+}
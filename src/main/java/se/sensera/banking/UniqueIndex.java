@@ -0,0 +1,17 @@
+package se.sensera.banking;
+
+/**
+ * Index over a field that must be unique among the entities of a repository. A key is held by at most
+ * one entity id, and claiming it is atomic, so two concurrent claims for the same key cannot both succeed.
+ */
+public interface UniqueIndex<K, I> {
+
+    /**
+     * Claims the key for the entity, succeeding if the key is free or already held by that entity.
+     */
+    boolean claim(K key, I id);
+
+    void release(K key, I id);
+
+    boolean contains(K key);
+}
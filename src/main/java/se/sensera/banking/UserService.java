@@ -18,6 +18,8 @@ public interface UserService {
 
     Stream<User> find(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder);
 
+    Page<User> findAfter(String cursor, int pageSize, SortOrder sortOrder);
+
     interface ChangeUser {
         void setName(String name);
         void setPersonalIdentificationNumber(String personalIdentificationNumber) throws UseException;
@@ -1,4 +1,21 @@
 package se.sensera.banking;
 
+import java.util.Optional;
+
 public interface UsersRepository extends Repository<User,String> {
+
+    default Optional<UniqueIndex<String, String>> personalIdentificationNumberIndex() {
+        return Optional.empty();
+    }
+
+    /**
+     * Users whose lower-cased name contains the searched text.
+     */
+    default Optional<LookupIndex<String, User>> nameSearchIndex() {
+        return Optional.empty();
+    }
+
+    default Optional<OrderedIndex<User>> orderedIndex(UserService.SortOrder sortOrder) {
+        return Optional.empty();
+    }
 }
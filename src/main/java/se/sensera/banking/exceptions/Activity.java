@@ -8,6 +8,7 @@ public enum Activity {
     INACTIVATE_ACCOUNT,
     CREATE_TRANSACTION,
     SUM_TRANSACTION,
+    TRANSFER,
     FIND_ACCOUNT,
     ;
 }
@@ -1,4 +1,11 @@
 package se.sensera.banking.exceptions;
 
 public class CriticalError extends RuntimeException {
+
+    public CriticalError() {
+    }
+
+    public CriticalError(String message) {
+        super(message);
+    }
 }
@@ -13,6 +13,9 @@ public enum UseExceptionType {
     NOT_FUNDED,
     NOT_FOUND,
     USER_NOT_FOUND,
-    ACCOUNT_NOT_ACTIVE
+    ACCOUNT_NOT_ACTIVE,
+    INVALID_TIMESTAMP,
+    NOT_SAVED,
+    IDEMPOTENCY_KEY_REUSED
     ;
 }
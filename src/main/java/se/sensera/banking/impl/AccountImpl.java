@@ -6,6 +6,8 @@ import lombok.Setter;
 import se.sensera.banking.Account;
 import se.sensera.banking.User;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 
@@ -17,19 +19,20 @@ public class AccountImpl implements Account {
     String name;
     String id;
     boolean active;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
 
     @Override
     public Stream<User> getUsers() {
-        return Stream.empty();  //Create_account_success collect to list
+        return users.values().stream();
     }
 
     @Override
     public void addUser(User user) {
-
+        users.put(user.getId(), user);
     }
 
     @Override
     public void removeUser(User user) {
-
+        users.remove(user.getId());
     }
 }
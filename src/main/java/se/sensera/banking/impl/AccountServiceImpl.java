@@ -4,37 +4,71 @@ import se.sensera.banking.*;
 import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.utils.KeysetUtils;
 import se.sensera.banking.utils.ListUtils;
 
 import java.util.Comparator;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class AccountServiceImpl implements AccountService {
 
     private UsersRepository usersRepository;
     private AccountsRepository accountsRepository;
+    private final IdGenerator idGenerator;
 
 
     public AccountServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        this(usersRepository, accountsRepository, SnowflakeIdGenerator.DEFAULT);
+    }
+
+    public AccountServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository, IdGenerator idGenerator) {
         this.usersRepository = usersRepository;
         this.accountsRepository = accountsRepository;
+        this.idGenerator = idGenerator;
     }
 
     @Override
     public Account createAccount(String userId, String accountName) throws UseException {
-        verifyAccountCreating(userId, accountName);
-        AccountImpl account = new AccountImpl(usersRepository.getEntityById(userId).get(), accountName, userId, true);
-        return accountsRepository.save(account);
+        verifyAccountCreating(userId);
+        AccountImpl account = new AccountImpl(usersRepository.getEntityById(userId).get(), accountName, idGenerator.nextId(), true);
+        claimAccountName(Activity.CREATE_ACCOUNT, accountName, account.getId());
+        return save(account, accountName);
     }
 
-    private void verifyAccountCreating(String userId, String accountName) throws UseException {
+    /**
+     * Saves the account, releasing the name claimed for it when the save fails, so that an account that was
+     * never stored does not keep the name from others.
+     */
+    private Account save(Account account, String claimedAccountName) {
+        try {
+            return accountsRepository.save(account);
+        } catch (RuntimeException e) {
+            accountsRepository.accountNameIndex().ifPresent(index -> index.release(claimedAccountName, account.getId()));
+            throw e;
+        }
+    }
+
+    private void verifyAccountCreating(String userId) throws UseException {
         if (usersRepository.getEntityById(userId).isEmpty()) {
             throw new UseException(Activity.CREATE_ACCOUNT, UseExceptionType.USER_NOT_FOUND);
         }
-        if (accountsRepository.all().anyMatch(x -> x.getName().equals(accountName))) {
-            throw new UseException(Activity.CREATE_ACCOUNT, UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE);
-        }
+    }
+
+    /**
+     * Claims the account name in the repository's unique index, which is atomic, or falls back to
+     * scanning all accounts when the repository has no such index.
+     */
+    private void claimAccountName(Activity activity, String accountName, String accountId) throws UseException {
+        Optional<UniqueIndex<String, String>> index = accountsRepository.accountNameIndex();
+        boolean unique = index.isPresent()
+                ? index.get().claim(accountName, accountId)
+                : accountsRepository.all().noneMatch(account -> account.getName().equals(accountName));
+        if (!unique)
+            throw new UseException(activity, UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE);
     }
 
     @Override
@@ -53,9 +87,7 @@ public class AccountServiceImpl implements AccountService {
             throw new UseException(Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_ACTIVE);
         }
         changeAccountConsumer.accept(name -> {
-            if (accountsRepository.all().anyMatch(account1 -> account1.getName().equals(name))) {
-                throw new UseException(Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE);
-            }
+            claimAccountName(Activity.UPDATE_ACCOUNT, name, account.getId());
             changingAccountName(account, name);
         });
     }
@@ -63,7 +95,7 @@ public class AccountServiceImpl implements AccountService {
     private void changingAccountName(Account account, String name) {
         if (!name.equals(account.getName())) {
             account.setName(name);
-            accountsRepository.save(account);
+            save(account, name);
         }
     }
 
@@ -146,13 +178,37 @@ public class AccountServiceImpl implements AccountService {
     @Override
     public Stream<Account> findAccounts(String searchValue, String userId, Integer pageNumber, Integer pageSize, SortOrder sortOrder) throws UseException {
 
-        Stream<Account> all = accountsRepository.all();
-        if (searchValue != null && !searchValue.isEmpty())
+        boolean searching = searchValue != null && !searchValue.isEmpty();
+        if (sortOrder == SortOrder.AccountName && userId == null && !searching)
+            return ListUtils.applySortedPage(accountsRepository.orderedIndex(SortOrder.AccountName), accountsRepository::all, account -> true,
+                    Comparator.comparing(Account::getName), pageNumber, pageSize);
+
+        Stream<Account> all = userId != null ? findAccountsOfUser(userId) : findAccountsNamed(searchValue);
+        if (searching)
             all = all.filter(account -> account.getName().contains(searchValue));
-        if (userId != null)
-            all = all.filter(account -> account.getOwner().getId().equals(userId) || account.getUsers().anyMatch(user -> user.getId().equals(userId)));
         if (sortOrder == SortOrder.AccountName)
-            all = all.sorted(Comparator.comparing(Account::getName));
+            return ListUtils.applySortedPage(all, Comparator.comparing(Account::getName), pageNumber, pageSize);
         return ListUtils.applyPage(all, pageNumber, pageSize);
     }
+
+    @Override
+    public Page<Account> findAccountsAfter(String cursor, int pageSize, SortOrder sortOrder) throws UseException {
+        Function<Account, String> sortKeyOf = sortOrder == SortOrder.AccountName ? Account::getName : Account::getId;
+        return KeysetUtils.applyKeysetPage(accountsRepository.orderedIndex(sortOrder), accountsRepository::all, sortKeyOf, cursor, pageSize);
+    }
+
+    private Stream<Account> findAccountsNamed(String searchValue) {
+        if (searchValue == null || searchValue.isEmpty())
+            return accountsRepository.all();
+        return accountsRepository.accountNameSearchIndex()
+                .map(index -> index.find(searchValue.toLowerCase(Locale.ROOT)))
+                .orElseGet(accountsRepository::all);
+    }
+
+    private Stream<Account> findAccountsOfUser(String userId) {
+        return accountsRepository.accountsByUserIndex()
+                .map(index -> index.find(userId))
+                .orElseGet(() -> accountsRepository.all()
+                        .filter(account -> account.getOwner().getId().equals(userId) || account.getUsers().anyMatch(user -> user.getId().equals(userId))));
+    }
 }
@@ -0,0 +1,132 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Transaction;
+import se.sensera.banking.utils.Cents;
+import se.sensera.banking.utils.TimestampParser;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Running balance per account, updated for every committed transaction so that balances can be read
+ * without scanning the transaction history. Each account keeps a time index of cumulative totals, so
+ * the balance as of any point in time is a binary search over that account's history. Times are epoch
+ * minutes, and a transaction created within a minute is counted from the end of that minute. Amounts
+ * are in cents, so balances are exact however many transactions they sum.
+ * <p>
+ * Next to its history every account has an available balance, which withdrawals are reserved from with
+ * compare-and-set before they are committed, so funding checks never wait for a lock. Deposits only become
+ * available once committed, so a reservation can never spend money that is not there yet.
+ */
+public class BalanceLedger {
+
+    public enum Reservation {
+        RESERVED,
+        NOT_FUNDED,
+        /**
+         * Another reservation or deposit on the account changed the available balance in between, try again.
+         */
+        CONTENDED
+    }
+
+    private final ConcurrentHashMap<String, AccountHistory> accounts = new ConcurrentHashMap<>();
+
+    public void load(Stream<Transaction> transactions) {
+        transactions.forEach(transaction -> add(transaction.getAccount().getId(), TimestampParser.epochMinuteAtOrAfter(transaction.getCreated().getTime()), Cents.ofAmount(transaction.getAmount())));
+    }
+
+    /**
+     * Records a transaction and makes its amount available.
+     */
+    public void add(String accountId, long created, long amount) {
+        AccountHistory history = historyOf(accountId);
+        history.add(created, amount);
+        history.available.addAndGet(amount);
+    }
+
+    /**
+     * Records a transaction without changing the available balance, for withdrawals already reserved.
+     */
+    public void record(String accountId, long created, long amount) {
+        historyOf(accountId).add(created, amount);
+    }
+
+    /**
+     * Makes an amount available, to commit deposits recorded earlier or to give back a reservation.
+     */
+    public void credit(String accountId, long amount) {
+        historyOf(accountId).available.addAndGet(amount);
+    }
+
+    /**
+     * Makes one attempt to reserve a withdrawal of {@code -amount} from the available balance.
+     */
+    public Reservation tryReserve(String accountId, long amount) {
+        AtomicLong available = historyOf(accountId).available;
+        long balance = available.get();
+        if (balance + amount < 0)
+            return Reservation.NOT_FUNDED;
+        return available.compareAndSet(balance, balance + amount) ? Reservation.RESERVED : Reservation.CONTENDED;
+    }
+
+    public long balance(String accountId) {
+        AccountHistory history = accounts.get(accountId);
+        return history == null ? 0 : history.total();
+    }
+
+    public long balanceAt(String accountId, long created) {
+        AccountHistory history = accounts.get(accountId);
+        return history == null ? 0 : history.totalAt(created);
+    }
+
+    private AccountHistory historyOf(String accountId) {
+        return accounts.computeIfAbsent(accountId, id -> new AccountHistory());
+    }
+
+    /**
+     * Distinct creation times of one account in ascending order, each with the cumulative total of all
+     * transactions created at or before it. Transactions almost always arrive in time order and are
+     * appended in constant time, a late transaction is inserted and shifts the totals after it.
+     */
+    static class AccountHistory {
+        final AtomicLong available = new AtomicLong();
+        private long[] times = new long[4];
+        private long[] totals = new long[4];
+        private int size;
+
+        synchronized void add(long created, long amount) {
+            int index = size > 0 && times[size - 1] < created ? -(size + 1) : Arrays.binarySearch(times, 0, size, created);
+            if (index < 0) {
+                index = -(index + 1);
+                insert(index, created, index == 0 ? 0 : totals[index - 1]);
+            }
+            for (int i = index; i < size; i++)
+                totals[i] += amount;
+        }
+
+        synchronized long total() {
+            return size == 0 ? 0 : totals[size - 1];
+        }
+
+        synchronized long totalAt(long created) {
+            int index = Arrays.binarySearch(times, 0, size, created);
+            if (index < 0)
+                index = -(index + 1) - 1;
+            return index < 0 ? 0 : totals[index];
+        }
+
+        private void insert(int index, long created, long total) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                totals = Arrays.copyOf(totals, size * 2);
+            }
+            System.arraycopy(times, index, times, index + 1, size - index);
+            System.arraycopy(totals, index, totals, index + 1, size - index);
+            times[index] = created;
+            totals[index] = total;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Account;
+import se.sensera.banking.Repository;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionColumns;
+import se.sensera.banking.TransactionsRepository;
+import se.sensera.banking.User;
+import se.sensera.banking.utils.Cents;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Transactions repository holding the transactions as columns of primitive values instead of as objects: the
+ * creation time in epoch millis, the amount in cents, and the account and user as numbers into dictionaries
+ * of the accounts and users seen. Rows are kept in chunks of fixed size, so the columns grow without being
+ * copied. Sums and reads through {@link #columns()} are loops over the columns, and a {@link Transaction}
+ * is only created, as a view of its row, when one is asked for. Sums run over the chunks in parallel.
+ * <p>
+ * Rows are written under a lock and become visible to readers once complete. A save of an existing id
+ * rewrites its row in place, a delete marks it deleted.
+ */
+public class ColumnarTransactionsRepository implements TransactionsRepository, TransactionColumns {
+    static final int CHUNK_ROWS = 1 << 16;
+    /**
+     * Bounds of the creation times compared in sums, so that differences between them cannot overflow.
+     */
+    private static final long MIN_CREATED_MILLIS = -(1L << 62);
+    private static final long MAX_CREATED_MILLIS = 1L << 62;
+
+    private final ConcurrentHashMap<String, Integer> rowsById = new ConcurrentHashMap<>();
+    private final Dictionary<Account> accounts = new Dictionary<>();
+    private final Dictionary<User> users = new Dictionary<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+
+    @Override
+    public Optional<Transaction> getEntityById(String id) {
+        Integer row = rowsById.get(id);
+        return row == null ? Optional.empty() : Optional.of(new RowView(row));
+    }
+
+    @Override
+    public Stream<Transaction> all() {
+        int size = this.size;
+        Chunk[] chunks = this.chunks;
+        return IntStream.range(0, size)
+                .filter(row -> chunks[row / CHUNK_ROWS].live[row % CHUNK_ROWS] != 0)
+                .mapToObj(RowView::new);
+    }
+
+    @Override
+    public Transaction save(Transaction transaction) {
+        writeLock.lock();
+        try {
+            Integer existing = rowsById.get(transaction.getId());
+            int row = existing != null ? existing : size;
+            Chunk chunk = chunkFor(row);
+            int offset = row % CHUNK_ROWS;
+            chunk.created[offset] = transaction.getCreated().getTime();
+            chunk.amounts[offset] = transaction.getAmountInCents();
+            chunk.accounts[offset] = accounts.indexOf(transaction.getAccount());
+            chunk.users[offset] = users.indexOf(transaction.getUser());
+            chunk.ids[offset] = transaction.getId();
+            chunk.live[offset] = 1;
+            if (existing == null)
+                rowsById.put(transaction.getId(), row);
+            size = Math.max(size, row + 1);
+        } finally {
+            writeLock.unlock();
+        }
+        return transaction;
+    }
+
+    @Override
+    public Transaction delete(Transaction transaction) {
+        writeLock.lock();
+        try {
+            Integer row = rowsById.remove(transaction.getId());
+            if (row != null)
+                chunks[row / CHUNK_ROWS].live[row % CHUNK_ROWS] = 0;
+        } finally {
+            writeLock.unlock();
+        }
+        return transaction;
+    }
+
+    @Override
+    public Optional<TransactionColumns> columns() {
+        return Optional.of(this);
+    }
+
+    /**
+     * Sums the chunks in parallel on the common fork-join pool. Within a chunk every row is looked at the same
+     * way, its amount masked to zero unless the row matches, with no branch on the values in the columns.
+     * A row rewritten during the sum can hold an account numbered after the selection was made, which is
+     * not selected.
+     */
+    @Override
+    public long sumInCents(Collection<String> accountIds, long createdFromMillis, long createdToMillis) {
+        int size = this.size;
+        Chunk[] chunks = this.chunks;
+        byte[] selected = new byte[accounts.size()];
+        boolean any = false;
+        for (String accountId : accountIds) {
+            int account = accounts.find(accountId);
+            if (account >= 0 && account < selected.length) {
+                selected[account] = 1;
+                any = true;
+            }
+        }
+        if (!any || createdFromMillis > createdToMillis)
+            return 0;
+        return new SumTask(chunks, 0, size, selected,
+                Math.max(createdFromMillis, MIN_CREATED_MILLIS), Math.min(createdToMillis, MAX_CREATED_MILLIS)).invoke();
+    }
+
+    @Override
+    public void forEach(Row row) {
+        int size = this.size;
+        Chunk[] chunks = this.chunks;
+        for (int first = 0; first < size; first += CHUNK_ROWS) {
+            Chunk chunk = chunks[first / CHUNK_ROWS];
+            int rows = Math.min(CHUNK_ROWS, size - first);
+            for (int i = 0; i < rows; i++)
+                if (chunk.live[i] != 0)
+                    row.accept(accounts.idOf(chunk.accounts[i]), chunk.created[i], chunk.amounts[i]);
+        }
+    }
+
+    private Chunk chunkFor(int row) {
+        int chunk = row / CHUNK_ROWS;
+        if (chunk == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunk + 1);
+            grown[chunk] = new Chunk();
+            chunks = grown;
+        }
+        return chunks[chunk];
+    }
+
+    private static class Chunk {
+        final long[] created = new long[CHUNK_ROWS];
+        final long[] amounts = new long[CHUNK_ROWS];
+        final int[] accounts = new int[CHUNK_ROWS];
+        final int[] users = new int[CHUNK_ROWS];
+        final String[] ids = new String[CHUNK_ROWS];
+        final byte[] live = new byte[CHUNK_ROWS];
+    }
+
+    /**
+     * Sum over the rows {@code from} until {@code to}, split in halves at chunk boundaries until a task
+     * is at most one chunk.
+     */
+    private static class SumTask extends RecursiveTask<Long> {
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+        private final byte[] selected;
+        private final long createdFrom;
+        private final long createdTo;
+
+        SumTask(Chunk[] chunks, int from, int to, byte[] selected, long createdFrom, long createdTo) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.selected = selected;
+            this.createdFrom = createdFrom;
+            this.createdTo = createdTo;
+        }
+
+        @Override
+        protected Long compute() {
+            int chunkCount = (to - from + CHUNK_ROWS - 1) / CHUNK_ROWS;
+            if (chunkCount <= 1)
+                return to > from ? sum(chunks[from / CHUNK_ROWS], from % CHUNK_ROWS, from % CHUNK_ROWS + to - from) : 0L;
+            int middle = from + chunkCount / 2 * CHUNK_ROWS;
+            SumTask right = new SumTask(chunks, middle, to, selected, createdFrom, createdTo);
+            right.fork();
+            long left = new SumTask(chunks, from, middle, selected, createdFrom, createdTo).compute();
+            return left + right.join();
+        }
+
+        private long sum(Chunk chunk, int from, int to) {
+            long[] created = chunk.created;
+            long[] amounts = chunk.amounts;
+            int[] accounts = chunk.accounts;
+            byte[] live = chunk.live;
+            byte[] selected = this.selected;
+            long createdFrom = this.createdFrom;
+            long createdTo = this.createdTo;
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                long time = Math.min(Math.max(created[i], MIN_CREATED_MILLIS), MAX_CREATED_MILLIS);
+                // The sign bit of each difference is set when the time is outside the range
+                long outside = ((time - createdFrom) | (createdTo - time)) >>> 63;
+                // Likewise set when the account is numbered after the selection, which then reads number 0
+                int account = accounts[i];
+                int known = (account - selected.length) >>> 31;
+                long match = (selected[account & -known] & known & live[i]) & (outside ^ 1);
+                sum += amounts[i] & -match;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Numbers the distinct entities the transactions refer to, so that a row only needs to hold a number.
+     * Numbers are handed out under the write lock and can be read without it. Entries are set with volatile
+     * writes, and before the number is handed out, so a reader given a number by a row sees its entity.
+     */
+    private static class Dictionary<E extends Repository.Entity<String>> {
+        private final ConcurrentHashMap<String, Integer> numbersById = new ConcurrentHashMap<>();
+        private volatile AtomicReferenceArray<E> entities = new AtomicReferenceArray<>(16);
+        private volatile AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(16);
+
+        int indexOf(E entity) {
+            String id = entity.getId();
+            Integer number = numbersById.get(id);
+            if (number != null) {
+                entities.set(number, entity);
+                return number;
+            }
+            number = numbersById.size();
+            if (number == ids.length()) {
+                entities = grown(entities);
+                ids = grown(ids);
+            }
+            ids.set(number, id);
+            entities.set(number, entity);
+            numbersById.put(id, number);
+            return number;
+        }
+
+        private static <T> AtomicReferenceArray<T> grown(AtomicReferenceArray<T> entries) {
+            AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(entries.length() * 2);
+            for (int i = 0; i < entries.length(); i++)
+                grown.set(i, entries.get(i));
+            return grown;
+        }
+
+        int size() {
+            return numbersById.size();
+        }
+
+        int find(String id) {
+            return Objects.requireNonNullElse(numbersById.get(id), -1);
+        }
+
+        E get(int number) {
+            return entities.get(number);
+        }
+
+        String idOf(int number) {
+            return ids.get(number);
+        }
+    }
+
+    /**
+     * A transaction read from its row when asked for.
+     */
+    private class RowView implements Transaction {
+        private final Chunk chunk;
+        private final int offset;
+
+        RowView(int row) {
+            chunk = chunks[row / CHUNK_ROWS];
+            offset = row % CHUNK_ROWS;
+        }
+
+        @Override
+        public String getId() {
+            return chunk.ids[offset];
+        }
+
+        @Override
+        public Date getCreated() {
+            return new Date(chunk.created[offset]);
+        }
+
+        @Override
+        public long getCreatedEpochMinute() {
+            return Math.floorDiv(chunk.created[offset], TimeUnit.MINUTES.toMillis(1));
+        }
+
+        @Override
+        public User getUser() {
+            return users.get(chunk.users[offset]);
+        }
+
+        @Override
+        public Account getAccount() {
+            return accounts.get(chunk.accounts[offset]);
+        }
+
+        @Override
+        public double getAmount() {
+            return Cents.toAmount(chunk.amounts[offset]);
+        }
+
+        @Override
+        public long getAmountInCents() {
+            return chunk.amounts[offset];
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof RowView && getId().equals(((RowView) other).getId());
+        }
+
+        @Override
+        public int hashCode() {
+            return getId().hashCode();
+        }
+    }
+}
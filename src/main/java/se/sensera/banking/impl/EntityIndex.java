@@ -0,0 +1,12 @@
+package se.sensera.banking.impl;
+
+/**
+ * Secondary index of an {@link InMemoryRepository}, told about every save and delete of an entity together
+ * with its id, so that the index need not ask the entity for it again. Calls for the same entity id never
+ * run concurrently.
+ */
+interface EntityIndex<E, I> {
+    void saved(I id, E entity);
+
+    void deleted(I id, E entity);
+}
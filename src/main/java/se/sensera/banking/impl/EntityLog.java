@@ -0,0 +1,51 @@
+package se.sensera.banking.impl;
+
+/**
+ * Write-ahead log of an {@link InMemoryRepository}, told about every save and delete of an entity before it is
+ * made. The log writes its entry and then runs the change, so a change whose entry could not be written is
+ * never made. Calls for the same entity id never run concurrently.
+ */
+interface EntityLog<E, I> {
+    EntityLog<Object, Object> NONE = new EntityLog<>() {
+        @Override
+        public long saved(Object id, Object entity, Runnable change) {
+            change.run();
+            return 0;
+        }
+
+        @Override
+        public long deleted(Object id, Object entity, Runnable change) {
+            change.run();
+            return 0;
+        }
+
+        @Override
+        public void committed(long lsn) {
+        }
+    };
+
+    /**
+     * Logs the save and then runs {@code change}.
+     *
+     * @return the sequence number of the entry, to be passed to {@link #committed}
+     */
+    long saved(I id, E entity, Runnable change);
+
+    /**
+     * Logs the delete and then runs {@code change}.
+     *
+     * @return the sequence number of the entry, to be passed to {@link #committed}
+     */
+    long deleted(I id, E entity, Runnable change);
+
+    /**
+     * Called once a logged change is made, outside of any lock of the repository, and returns when the entry
+     * is as durable as the log promises.
+     */
+    void committed(long lsn);
+
+    @SuppressWarnings("unchecked")
+    static <E, I> EntityLog<E, I> none() {
+        return (EntityLog<E, I>) (EntityLog<?, ?>) NONE;
+    }
+}
@@ -0,0 +1,19 @@
+package se.sensera.banking.impl;
+
+/**
+ * When the file-backed logs sync what is written to them to disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * Every write is synced to disk before it returns, concurrent writes sharing one sync.
+     */
+    ON_COMMIT,
+    /**
+     * Writes are synced at a fixed interval, so a crash loses at most that interval of writes.
+     */
+    PERIODIC,
+    /**
+     * Syncing is left to the operating system.
+     */
+    NONE
+}
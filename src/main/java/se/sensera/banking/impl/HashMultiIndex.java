@@ -0,0 +1,67 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Repository;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index from keys to the ids of all entities having that key, where an entity can have any number of keys.
+ */
+public class HashMultiIndex<E extends Repository.Entity<I>, K, I> implements EntityIndex<E, I> {
+    private final Function<E, Stream<K>> keysOf;
+    private final ConcurrentHashMap<K, Set<I>> idsByKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<I, Set<K>> keysById = new ConcurrentHashMap<>();
+
+    public HashMultiIndex(Function<E, Stream<K>> keysOf) {
+        this.keysOf = keysOf;
+    }
+
+    public Stream<I> idsOf(K key) {
+        return idsByKey.getOrDefault(key, Collections.emptySet()).stream();
+    }
+
+    @Override
+    public void saved(I id, E entity) {
+        Set<K> keys = keysOf.apply(entity).collect(Collectors.toSet());
+        Set<K> previousKeys = keysById.put(id, keys);
+        if (previousKeys != null)
+            previousKeys.stream()
+                    .filter(key -> !keys.contains(key))
+                    .forEach(key -> remove(key, id));
+        keys.stream()
+                .filter(key -> previousKeys == null || !previousKeys.contains(key))
+                .forEach(key -> add(key, id));
+    }
+
+    @Override
+    public void deleted(I id, E entity) {
+        Set<K> keys = keysById.remove(id);
+        if (keys != null)
+            keys.forEach(key -> remove(key, id));
+    }
+
+    /**
+     * Adds the id within the map's compute, so that it cannot go into a set {@link #remove} has just taken
+     * out of the map for being empty.
+     */
+    private void add(K key, I id) {
+        idsByKey.compute(key, (k, ids) -> {
+            if (ids == null)
+                ids = ConcurrentHashMap.newKeySet();
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    private void remove(K key, I id) {
+        idsByKey.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
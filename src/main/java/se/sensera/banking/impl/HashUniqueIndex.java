@@ -0,0 +1,56 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Repository;
+import se.sensera.banking.UniqueIndex;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Unique index kept in hash maps, so claims and lookups are constant time regardless of repository size.
+ * The owning repository keeps it in step with the entities.
+ */
+public class HashUniqueIndex<E extends Repository.Entity<I>, K, I> implements UniqueIndex<K, I>, EntityIndex<E, I> {
+    private final Function<E, K> keyOf;
+    private final ConcurrentHashMap<K, I> idsByKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<I, K> keysById = new ConcurrentHashMap<>();
+
+    public HashUniqueIndex(Function<E, K> keyOf) {
+        this.keyOf = keyOf;
+    }
+
+    @Override
+    public boolean claim(K key, I id) {
+        I holder = idsByKey.putIfAbsent(key, id);
+        return holder == null || holder.equals(id);
+    }
+
+    @Override
+    public void release(K key, I id) {
+        idsByKey.remove(key, id);
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return idsByKey.containsKey(key);
+    }
+
+    /**
+     * Moves the entity to its current key. A save that bypassed {@link #claim} and collides with the key of
+     * another entity leaves that key with its current holder.
+     */
+    @Override
+    public void saved(I id, E entity) {
+        K key = keyOf.apply(entity);
+        K previousKey = key != null && claim(key, id) ? keysById.put(id, key) : keysById.remove(id);
+        if (previousKey != null && !previousKey.equals(key))
+            release(previousKey, id);
+    }
+
+    @Override
+    public void deleted(I id, E entity) {
+        K key = keysById.remove(id);
+        if (key != null)
+            release(key, id);
+    }
+}
@@ -0,0 +1,53 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.LookupIndex;
+import se.sensera.banking.OrderedIndex;
+import se.sensera.banking.UniqueIndex;
+import se.sensera.banking.User;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class InMemoryAccountsRepository extends InMemoryRepository<Account, String> implements AccountsRepository {
+    private final UniqueIndex<String, String> accountNameIndex = addUniqueIndex(Account::getName);
+    private final LookupIndex<String, Account> accountsByUserIndex = addMultiIndex(account -> Stream.concat(Stream.of(account.getOwner()), account.getUsers())
+            .map(User::getId));
+    private final LookupIndex<String, Account> accountNameSearchIndex = addSearchIndex(Account::getName);
+    private final Map<AccountService.SortOrder, OrderedIndex<Account>> orderedIndexes = Map.of(
+            AccountService.SortOrder.None, addIndex(new SkipListOrderedIndex<>(Account::getId)),
+            AccountService.SortOrder.AccountName, addIndex(new SkipListOrderedIndex<>(Account::getName)));
+
+    public InMemoryAccountsRepository() {
+    }
+
+    /**
+     * A repository whose saves and deletes are written to the state log, see {@link StateLog}.
+     */
+    public InMemoryAccountsRepository(StateLog stateLog) {
+        logTo(stateLog.accounts());
+    }
+
+    @Override
+    public Optional<UniqueIndex<String, String>> accountNameIndex() {
+        return Optional.of(accountNameIndex);
+    }
+
+    @Override
+    public Optional<LookupIndex<String, Account>> accountsByUserIndex() {
+        return Optional.of(accountsByUserIndex);
+    }
+
+    @Override
+    public Optional<LookupIndex<String, Account>> accountNameSearchIndex() {
+        return Optional.of(accountNameSearchIndex);
+    }
+
+    @Override
+    public Optional<OrderedIndex<Account>> orderedIndex(AccountService.SortOrder sortOrder) {
+        return Optional.ofNullable(orderedIndexes.get(sortOrder));
+    }
+}
@@ -0,0 +1,133 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.LookupIndex;
+import se.sensera.banking.Repository;
+import se.sensera.banking.UniqueIndex;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Repository held in memory. Entities are looked up by id in a hash map and iterated in the order they
+ * were first saved. Reads never lock, and {@link #all()} streams over the live data without copying it,
+ * so it is weakly consistent: it reflects some, but not necessarily all, saves made while it is consumed.
+ * <p>
+ * A repository with a {@link EntityLog} has each save and delete logged before any index or the entity
+ * itself changes, so a change that fails to be logged leaves the repository as it was.
+ */
+public class InMemoryRepository<E extends Repository.Entity<I>, I> implements Repository<E, I> {
+    private final ConcurrentHashMap<I, Slot<E>> entitiesById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Slot<E>> entitiesInInsertionOrder = new ConcurrentSkipListMap<>();
+    private final AtomicLong insertionSequence = new AtomicLong();
+    private final List<EntityIndex<E, I>> indexes = new CopyOnWriteArrayList<>();
+    private volatile EntityLog<E, I> log = EntityLog.none();
+
+    /**
+     * Declares a unique index over the field extracted by {@code keyOf}, maintained on every save and delete.
+     */
+    protected <K> UniqueIndex<K, I> addUniqueIndex(Function<E, K> keyOf) {
+        return addIndex(new HashUniqueIndex<>(keyOf));
+    }
+
+    /**
+     * Declares an index from each of the keys extracted by {@code keysOf} to the entities having it. The index
+     * finds the entities having a key in the order of {@link #all()}.
+     */
+    protected <K> LookupIndex<K, E> addMultiIndex(Function<E, Stream<K>> keysOf) {
+        HashMultiIndex<E, K, I> index = addIndex(new HashMultiIndex<>(keysOf));
+        return key -> index.idsOf(key)
+                .map(entitiesById::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong(slot -> slot.sequence))
+                .map(slot -> slot.entity);
+    }
+
+    /**
+     * Declares a substring index over the text extracted by {@code textOf}. The index finds the entities whose
+     * lower-cased text contains the searched text, in the order of {@link #all()}.
+     */
+    protected LookupIndex<String, E> addSearchIndex(Function<E, String> textOf) {
+        TrigramIndex<E, I> index = addIndex(new TrigramIndex<>(textOf));
+        return text -> index.idsOf(text)
+                .map(entitiesById::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong(slot -> slot.sequence))
+                .map(slot -> slot.entity);
+    }
+
+    protected <X extends EntityIndex<E, I>> X addIndex(X index) {
+        all().forEach(entity -> index.saved(entity.getId(), entity));
+        indexes.add(index);
+        return index;
+    }
+
+    /**
+     * Logs every save and delete from now on to {@code log}.
+     */
+    protected void logTo(EntityLog<E, I> log) {
+        this.log = log;
+    }
+
+    @Override
+    public Optional<E> getEntityById(I id) {
+        Slot<E> slot = entitiesById.get(id);
+        return slot == null ? Optional.empty() : Optional.of(slot.entity);
+    }
+
+    @Override
+    public Stream<E> all() {
+        return entitiesInInsertionOrder.values().stream().map(slot -> slot.entity);
+    }
+
+    @Override
+    public E save(E entity) {
+        EntityLog<E, I> log = this.log;
+        long[] lsn = new long[1];
+        entitiesById.compute(entity.getId(), (id, slot) -> {
+            Slot<E> saved = slot != null ? slot : new Slot<>(insertionSequence.incrementAndGet(), entity);
+            lsn[0] = log.saved(id, entity, () -> {
+                indexes.forEach(index -> index.saved(id, entity));
+                if (slot == null)
+                    entitiesInInsertionOrder.put(saved.sequence, saved);
+                else
+                    saved.entity = entity;
+            });
+            return saved;
+        });
+        log.committed(lsn[0]);
+        return entity;
+    }
+
+    @Override
+    public E delete(E entity) {
+        EntityLog<E, I> log = this.log;
+        long[] lsn = new long[1];
+        entitiesById.computeIfPresent(entity.getId(), (id, slot) -> {
+            lsn[0] = log.deleted(id, entity, () -> {
+                indexes.forEach(index -> index.deleted(id, entity));
+                entitiesInInsertionOrder.remove(slot.sequence);
+            });
+            return null;
+        });
+        log.committed(lsn[0]);
+        return entity;
+    }
+
+    private static class Slot<E> {
+        final long sequence;
+        volatile E entity;
+
+        Slot(long sequence, E entity) {
+            this.sequence = sequence;
+            this.entity = entity;
+        }
+    }
+}
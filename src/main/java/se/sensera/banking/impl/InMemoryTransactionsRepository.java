@@ -0,0 +1,7 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionsRepository;
+
+public class InMemoryTransactionsRepository extends InMemoryRepository<Transaction, String> implements TransactionsRepository {
+}
@@ -0,0 +1,45 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.LookupIndex;
+import se.sensera.banking.OrderedIndex;
+import se.sensera.banking.UniqueIndex;
+import se.sensera.banking.User;
+import se.sensera.banking.UserService;
+import se.sensera.banking.UsersRepository;
+
+import java.util.Map;
+import java.util.Optional;
+
+public class InMemoryUsersRepository extends InMemoryRepository<User, String> implements UsersRepository {
+    private final UniqueIndex<String, String> personalIdentificationNumberIndex = addUniqueIndex(User::getPersonalIdentificationNumber);
+    private final LookupIndex<String, User> nameSearchIndex = addSearchIndex(User::getName);
+    private final Map<UserService.SortOrder, OrderedIndex<User>> orderedIndexes = Map.of(
+            UserService.SortOrder.None, addIndex(new SkipListOrderedIndex<>(User::getId)),
+            UserService.SortOrder.Name, addIndex(new SkipListOrderedIndex<>(User::getName)),
+            UserService.SortOrder.PersonalId, addIndex(new SkipListOrderedIndex<>(User::getPersonalIdentificationNumber)));
+
+    public InMemoryUsersRepository() {
+    }
+
+    /**
+     * A repository whose saves and deletes are written to the state log, see {@link StateLog}.
+     */
+    public InMemoryUsersRepository(StateLog stateLog) {
+        logTo(stateLog.users());
+    }
+
+    @Override
+    public Optional<UniqueIndex<String, String>> personalIdentificationNumberIndex() {
+        return Optional.of(personalIdentificationNumberIndex);
+    }
+
+    @Override
+    public Optional<LookupIndex<String, User>> nameSearchIndex() {
+        return Optional.of(nameSearchIndex);
+    }
+
+    @Override
+    public Optional<OrderedIndex<User>> orderedIndex(UserService.SortOrder sortOrder) {
+        return Optional.ofNullable(orderedIndexes.get(sortOrder));
+    }
+}
@@ -0,0 +1,75 @@
+package se.sensera.banking.impl;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+import se.sensera.banking.utils.Cents;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A transaction read back from a {@link JournalTransactionsRepository}. The journal only keeps the user and
+ * account ids, they are looked up the first time they are asked for.
+ */
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+class JournalTransaction implements Transaction {
+    @Getter
+    @EqualsAndHashCode.Include
+    private final String id;
+    private final long createdMillis;
+    private final String userId;
+    private final String accountId;
+    @Getter
+    private final long amountInCents;
+    private final UsersRepository usersRepository;
+    private final AccountsRepository accountsRepository;
+    private User user;
+    private Account account;
+
+    JournalTransaction(String id, long createdMillis, String userId, String accountId, long amountInCents,
+                       UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        this.id = id;
+        this.createdMillis = createdMillis;
+        this.userId = userId;
+        this.accountId = accountId;
+        this.amountInCents = amountInCents;
+        this.usersRepository = usersRepository;
+        this.accountsRepository = accountsRepository;
+    }
+
+    @Override
+    public Date getCreated() {
+        return new Date(createdMillis);
+    }
+
+    @Override
+    public long getCreatedEpochMinute() {
+        return Math.floorDiv(createdMillis, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Override
+    public User getUser() {
+        if (user == null)
+            user = usersRepository.getEntityById(userId)
+                    .orElseThrow(() -> new IllegalStateException("User " + userId + " of transaction " + id + " not found"));
+        return user;
+    }
+
+    @Override
+    public Account getAccount() {
+        if (account == null)
+            account = accountsRepository.getEntityById(accountId)
+                    .orElseThrow(() -> new IllegalStateException("Account " + accountId + " of transaction " + id + " not found"));
+        return account;
+    }
+
+    @Override
+    public double getAmount() {
+        return Cents.toAmount(amountInCents);
+    }
+}
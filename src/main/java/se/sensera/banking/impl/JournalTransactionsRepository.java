@@ -0,0 +1,299 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionsRepository;
+import se.sensera.banking.UsersRepository;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32C;
+import java.util.stream.Stream;
+
+import static se.sensera.banking.exceptions.HandleException.safe;
+
+/**
+ * Transactions repository kept in an append-only journal of fixed-size records in memory-mapped segment
+ * files, so transactions survive a restart. Each record holds the transaction id, the creation time, the user
+ * and account ids, the amount in cents and a checksum. Users and accounts are looked up in their repositories when a
+ * transaction is read.
+ * <p>
+ * Records are appended under a lock and become visible to readers once complete. {@link #getEntityById} goes
+ * through an in-memory index from id to record number, and {@link #all()} reads the records straight out of
+ * the mapped segments in the order they were appended. Records are never rewritten: a save of an existing id
+ * appends a new record and a delete appends a deleted record, and only the marker of the record they replace
+ * is changed, so that readers skip it. On recovery the latest record of each id wins whatever the markers of
+ * the records before it say, so a crash while a record is replaced loses at most the new record.
+ * <p>
+ * When a write is made durable is decided by the {@link FsyncPolicy}. With {@link FsyncPolicy#ON_COMMIT}
+ * concurrent writers share one fsync: the first to get to it syncs everything appended so far, and the others
+ * find their records already durable. {@link #saveAll} appends all records before syncing once.
+ */
+public class JournalTransactionsRepository implements TransactionsRepository, AutoCloseable {
+    static final int RECORD_SIZE = 144;
+    static final int SEGMENT_RECORDS = 1 << 16;
+    static final int MAX_ID_LENGTH = 39;
+
+    static final int COMMITTED = 0x54524E31;
+    static final int DELETED = 0x54524E30;
+    static final int SUPERSEDED = 0x54524E32;
+
+    private static final int MARKER_OFFSET = 0;
+    private static final int CREATED_OFFSET = 4;
+    private static final int AMOUNT_OFFSET = 12;
+    private static final int ID_OFFSET = 20;
+    private static final int USER_ID_OFFSET = ID_OFFSET + MAX_ID_LENGTH + 1;
+    private static final int ACCOUNT_ID_OFFSET = USER_ID_OFFSET + MAX_ID_LENGTH + 1;
+    private static final int CHECKSUM_OFFSET = ACCOUNT_ID_OFFSET + MAX_ID_LENGTH + 1;
+
+    private final Path directory;
+    private final UsersRepository usersRepository;
+    private final AccountsRepository accountsRepository;
+    private final FsyncPolicy fsyncPolicy;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Long> recordsById = new ConcurrentHashMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService syncScheduler;
+    private volatile long size;
+    private volatile long durableSize;
+
+    public JournalTransactionsRepository(Path directory, UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        this(directory, usersRepository, accountsRepository, FsyncPolicy.ON_COMMIT, Duration.ZERO);
+    }
+
+    /**
+     * @param syncInterval how often records are synced with {@link FsyncPolicy#PERIODIC}, ignored otherwise
+     */
+    public JournalTransactionsRepository(Path directory, UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                         FsyncPolicy fsyncPolicy, Duration syncInterval) {
+        this.directory = directory;
+        this.usersRepository = usersRepository;
+        this.accountsRepository = accountsRepository;
+        this.fsyncPolicy = fsyncPolicy;
+        safe(() -> Files.createDirectories(directory), e -> "Cannot create journal directory " + directory);
+        recover();
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(() -> sync(size), syncInterval.toNanos(), syncInterval.toNanos(), TimeUnit.NANOSECONDS);
+        } else
+            syncScheduler = null;
+    }
+
+    @Override
+    public Optional<Transaction> getEntityById(String id) {
+        Long record = recordsById.get(id);
+        return record == null ? Optional.empty() : Optional.of(read(record));
+    }
+
+    @Override
+    public Stream<Transaction> all() {
+        return LongStream.range(0, size)
+                .filter(record -> marker(record) == COMMITTED)
+                .mapToObj(this::read);
+    }
+
+    @Override
+    public Transaction save(Transaction transaction) {
+        long written = append(List.of(transaction));
+        if (fsyncPolicy == FsyncPolicy.ON_COMMIT)
+            sync(written);
+        return transaction;
+    }
+
+    @Override
+    public List<Transaction> saveAll(List<Transaction> transactions) {
+        long written = append(transactions);
+        if (fsyncPolicy == FsyncPolicy.ON_COMMIT)
+            sync(written);
+        return transactions;
+    }
+
+    @Override
+    public Transaction delete(Transaction transaction) {
+        long written;
+        appendLock.lock();
+        try {
+            Long record = recordsById.remove(transaction.getId());
+            if (record == null)
+                return transaction;
+            long deleted = size;
+            write(deleted, transaction, DELETED);
+            size = written = deleted + 1;
+            mark(record, SUPERSEDED);
+        } finally {
+            appendLock.unlock();
+        }
+        if (fsyncPolicy == FsyncPolicy.ON_COMMIT)
+            sync(written);
+        return transaction;
+    }
+
+    /**
+     * Syncs everything appended so far and stops periodic syncing.
+     */
+    @Override
+    public void close() {
+        if (syncScheduler != null)
+            syncScheduler.shutdownNow();
+        sync(size);
+    }
+
+    /**
+     * Writes the records and returns the number of records in the journal after them, which is what has to
+     * be durable for them to be.
+     */
+    private long append(List<Transaction> transactions) {
+        appendLock.lock();
+        try {
+            long end = size;
+            List<Long> superseded = new ArrayList<>();
+            for (Transaction transaction : transactions) {
+                long record = end++;
+                write(record, transaction, COMMITTED);
+                Long previous = recordsById.put(transaction.getId(), record);
+                if (previous != null)
+                    superseded.add(previous);
+            }
+            size = end;
+            superseded.forEach(record -> mark(record, SUPERSEDED));
+            return end;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void write(long record, Transaction transaction, int marker) {
+        MappedByteBuffer segment = segmentOf(record);
+        int offset = offsetOf(record);
+        segment.putLong(offset + CREATED_OFFSET, transaction.getCreated().getTime());
+        segment.putLong(offset + AMOUNT_OFFSET, transaction.getAmountInCents());
+        putId(segment, offset + ID_OFFSET, transaction.getId());
+        putId(segment, offset + USER_ID_OFFSET, transaction.getUser().getId());
+        putId(segment, offset + ACCOUNT_ID_OFFSET, transaction.getAccount().getId());
+        segment.putInt(offset + CHECKSUM_OFFSET, checksum(segment, offset));
+        segment.putInt(offset + MARKER_OFFSET, marker);
+    }
+
+    private Transaction read(long record) {
+        MappedByteBuffer segment = segmentOf(record);
+        int offset = offsetOf(record);
+        return new JournalTransaction(getId(segment, offset + ID_OFFSET), segment.getLong(offset + CREATED_OFFSET),
+                getId(segment, offset + USER_ID_OFFSET), getId(segment, offset + ACCOUNT_ID_OFFSET),
+                segment.getLong(offset + AMOUNT_OFFSET), usersRepository, accountsRepository);
+    }
+
+    private int marker(long record) {
+        return segmentOf(record).getInt(offsetOf(record) + MARKER_OFFSET);
+    }
+
+    private void mark(long record, int marker) {
+        segmentOf(record).putInt(offsetOf(record) + MARKER_OFFSET, marker);
+    }
+
+    private void sync(long records) {
+        if (durableSize >= records)
+            return;
+        synchronized (syncLock) {
+            if (durableSize >= records)
+                return;
+            long target = size;
+            int lastSegment = (int) ((target - 1) / SEGMENT_RECORDS);
+            for (int segment = (int) (durableSize / SEGMENT_RECORDS); segment <= lastSegment && segment < segments.size(); segment++)
+                segments.get(segment).force();
+            durableSize = target;
+        }
+    }
+
+    private MappedByteBuffer segmentOf(long record) {
+        int segment = (int) (record / SEGMENT_RECORDS);
+        while (segment >= segments.size())
+            segments.add(map(segments.size()));
+        return segments.get(segment);
+    }
+
+    private static int offsetOf(long record) {
+        return (int) (record % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    private MappedByteBuffer map(int segment) {
+        Path file = directory.resolve(String.format("transactions-%08d.journal", segment));
+        return safe(() -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * RECORD_SIZE);
+            }
+        }, e -> "Cannot map journal segment " + file);
+    }
+
+    /**
+     * Finds the end of the journal, the first record that was never completely written, and indexes the
+     * latest record of each id before it. The pages of a mapped file may reach the disk in any order, so a
+     * record only counts as written when both its marker and its checksum are there, and the markers of
+     * replaced records are set again from what the records say rather than trusted.
+     */
+    private void recover() {
+        long record = 0;
+        while (segmentExists((int) (record / SEGMENT_RECORDS))) {
+            int marker = marker(record);
+            MappedByteBuffer segment = segmentOf(record);
+            int offset = offsetOf(record);
+            if ((marker != COMMITTED && marker != SUPERSEDED && marker != DELETED)
+                    || segment.getInt(offset + CHECKSUM_OFFSET) != checksum(segment, offset))
+                break;
+            String id = getId(segment, offset + ID_OFFSET);
+            Long previous = marker == DELETED ? recordsById.remove(id) : recordsById.put(id, record);
+            if (previous != null && marker(previous) != SUPERSEDED)
+                mark(previous, SUPERSEDED);
+            record++;
+        }
+        recordsById.values().forEach(latest -> {
+            if (marker(latest) != COMMITTED)
+                mark(latest, COMMITTED);
+        });
+        size = record;
+        durableSize = record;
+    }
+
+    private boolean segmentExists(int segment) {
+        return segment < segments.size() || Files.exists(directory.resolve(String.format("transactions-%08d.journal", segment)));
+    }
+
+    private static int checksum(MappedByteBuffer segment, int offset) {
+        CRC32C crc = new CRC32C();
+        crc.update(segment.slice(offset + CREATED_OFFSET, CHECKSUM_OFFSET - CREATED_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private static void putId(MappedByteBuffer segment, int offset, String id) {
+        byte[] bytes = id.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > MAX_ID_LENGTH)
+            throw new IllegalArgumentException("Id '" + id + "' is longer than " + MAX_ID_LENGTH + " characters");
+        segment.put(offset, (byte) bytes.length);
+        segment.put(offset + 1, bytes);
+    }
+
+    private static String getId(MappedByteBuffer segment, int offset) {
+        byte[] bytes = new byte[segment.get(offset)];
+        segment.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
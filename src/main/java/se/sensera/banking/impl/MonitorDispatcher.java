@@ -0,0 +1,217 @@
+package se.sensera.banking.impl;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers events to one monitor on a thread of its own, so a slow monitor never holds up the thread that
+ * publishes the events. Published events wait in a bounded ring buffer and are delivered in publishing
+ * order, either one at a time or in batches. What happens when the buffer is full is decided by the
+ * {@link BackpressurePolicy}.
+ * <p>
+ * {@link #close()} stops the dispatcher once the events already published have been delivered. Events published
+ * after that are dropped.
+ */
+public class MonitorDispatcher<T> implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MonitorDispatcher.class.getName());
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    public enum BackpressurePolicy {
+        /**
+         * The publisher waits until the monitor has made room. No event is lost.
+         */
+        BLOCK,
+        /**
+         * The oldest waiting event is dropped to make room. The publisher never waits.
+         */
+        DROP_OLDEST,
+        /**
+         * Events that do not fit are kept in an unbounded overflow queue behind the buffer. No event is lost
+         * and the publisher never waits, at the cost of memory while the monitor lags.
+         */
+        SPILL
+    }
+
+    private final Consumer<List<T>> monitor;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BackpressurePolicy policy;
+    private final Object[] ring;
+    private final ArrayDeque<T> spill = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Thread thread;
+    private int head;
+    private int size;
+    private boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public MonitorDispatcher(Consumer<T> monitor, int capacity, BackpressurePolicy policy) {
+        this(batch -> monitor.accept(batch.get(0)), 1, Duration.ZERO, capacity, policy);
+    }
+
+    /**
+     * Delivers the events in batches of at most {@code maxBatch}. A batch is delivered when it is full, or
+     * {@code maxDelay} after its first event was taken from the buffer, whichever comes first.
+     */
+    public MonitorDispatcher(Consumer<List<T>> monitor, int maxBatch, Duration maxDelay, int capacity, BackpressurePolicy policy) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive but was " + capacity);
+        if (maxBatch < 1)
+            throw new IllegalArgumentException("Max batch must be positive but was " + maxBatch);
+        this.monitor = monitor;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.policy = policy;
+        this.ring = new Object[capacity];
+        this.thread = new Thread(this::deliver, "transaction-monitor-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void publish(T event) {
+        lock.lock();
+        try {
+            published.increment();
+            while (isFull() || closed) {
+                if (closed) {
+                    dropped.increment();
+                    return;
+                }
+                switch (policy) {
+                    case BLOCK:
+                        notFull.awaitUninterruptibly();
+                        continue;
+                    case DROP_OLDEST:
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                        size--;
+                        dropped.increment();
+                        continue;
+                    case SPILL:
+                        spill.addLast(event);
+                        spilled.increment();
+                        return;
+                }
+            }
+            ring[(head + size) % ring.length] = event;
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops taking new events and waits for the delivery thread to deliver the events already published and
+     * end. Publishers waiting for room are woken and their events dropped.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (Thread.currentThread() == thread)
+            return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public MonitorMetrics metrics() {
+        long deliveredCount = delivered.sum();
+        long droppedCount = dropped.sum();
+        long publishedCount = published.sum();
+        return new MonitorMetrics(publishedCount, deliveredCount, droppedCount, spilled.sum(), failed.sum(),
+                publishedCount - deliveredCount - droppedCount);
+    }
+
+    private boolean isFull() {
+        // Once events have spilled, later events must queue behind them to keep the publishing order
+        return size == ring.length || !spill.isEmpty();
+    }
+
+    /**
+     * Delivers batches until the dispatcher is closed and drained. A monitor that throws, even an error, has
+     * the batch counted as failed and logged, and keeps being delivered to, so its buffer never stops being
+     * emptied.
+     */
+    private void deliver() {
+        List<T> batch;
+        while (!(batch = takeBatch()).isEmpty()) {
+            try {
+                monitor.accept(batch);
+            } catch (Throwable e) {
+                failed.add(batch.size());
+                LOGGER.log(Level.WARNING, "Monitor on " + thread.getName() + " failed on a batch of " + batch.size(), e);
+            }
+            delivered.add(batch.size());
+        }
+    }
+
+    /**
+     * Takes the next batch, waiting for one, or an empty batch once the dispatcher is closed and drained.
+     */
+    private List<T> takeBatch() {
+        List<T> batch = new ArrayList<>(Math.min(maxBatch, ring.length));
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (closed)
+                    return batch;
+                notEmpty.awaitUninterruptibly();
+            }
+            long delayNanos = maxDelayNanos;
+            while (true) {
+                while (size > 0 && batch.size() < maxBatch)
+                    batch.add(takeFirst());
+                notFull.signalAll();
+                if (batch.size() == maxBatch || delayNanos <= 0 || closed)
+                    return batch;
+                try {
+                    delayNanos = notEmpty.awaitNanos(delayNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return batch;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T takeFirst() {
+        T event = (T) ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        size--;
+        if (!spill.isEmpty()) {
+            ring[(head + size) % ring.length] = spill.removeFirst();
+            size++;
+        }
+        return event;
+    }
+}
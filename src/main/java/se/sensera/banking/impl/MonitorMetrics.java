@@ -0,0 +1,17 @@
+package se.sensera.banking.impl;
+
+import lombok.Value;
+
+/**
+ * Counters of one monitor. {@code lag} is the number of published events the monitor has not been
+ * given yet, and events that failed with an exception still count as delivered.
+ */
+@Value
+public class MonitorMetrics {
+    long published;
+    long delivered;
+    long dropped;
+    long spilled;
+    long failed;
+    long lag;
+}
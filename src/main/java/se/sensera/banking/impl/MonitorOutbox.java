@@ -0,0 +1,36 @@
+package se.sensera.banking.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Events waiting to be handed on in the order they were added. Adding never waits. Whoever drains hands on
+ * the events of all threads, one drainer at a time, so a drainer held up by a slow consumer holds up no one
+ * but itself: the others add their events and leave them for it.
+ */
+class MonitorOutbox<T> {
+    private final Queue<T> events = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock draining = new ReentrantLock();
+
+    void add(T event) {
+        events.add(event);
+    }
+
+    /**
+     * Hands on the waiting events unless another thread is already doing so. The queue is checked again after
+     * letting go of the drain, so an event added just before that is not left behind.
+     */
+    void drain(Consumer<T> consumer) {
+        while (!events.isEmpty() && draining.tryLock()) {
+            try {
+                T event;
+                while ((event = events.poll()) != null)
+                    consumer.accept(event);
+            } finally {
+                draining.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package se.sensera.banking.impl;
+
+import lombok.Value;
+import se.sensera.banking.OrderedIndex;
+import se.sensera.banking.Repository;
+import se.sensera.banking.utils.KeysetUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Ordered index kept in a concurrent skip list, so finding a position is O(log n) and walking on from it
+ * needs no sorting. A save that changes the sort key moves the entity to its new position.
+ */
+public class SkipListOrderedIndex<E extends Repository.Entity<String>> implements OrderedIndex<E>, EntityIndex<E, String> {
+    private final Function<E, String> sortKeyOf;
+    private final ConcurrentSkipListMap<Position, E> entities = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Position> positionsById = new ConcurrentHashMap<>();
+
+    public SkipListOrderedIndex(Function<E, String> sortKeyOf) {
+        this.sortKeyOf = sortKeyOf;
+    }
+
+    @Override
+    public Stream<E> after(String key, String id) {
+        if (id == null)
+            return entities.values().stream();
+        return entities.tailMap(new Position(key, id), false).values().stream();
+    }
+
+    @Override
+    public void saved(String id, E entity) {
+        Position position = new Position(sortKeyOf.apply(entity), id);
+        Position previousPosition = positionsById.put(id, position);
+        if (previousPosition != null && !previousPosition.equals(position))
+            entities.remove(previousPosition);
+        entities.put(position, entity);
+    }
+
+    @Override
+    public void deleted(String id, E entity) {
+        Position position = positionsById.remove(id);
+        if (position != null)
+            entities.remove(position);
+    }
+
+    @Value
+    static class Position implements Comparable<Position> {
+        String key;
+        String id;
+
+        @Override
+        public int compareTo(Position other) {
+            return KeysetUtils.compare(key, id, other.key, other.id);
+        }
+    }
+}
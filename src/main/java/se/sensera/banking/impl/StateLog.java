@@ -0,0 +1,621 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+import static se.sensera.banking.exceptions.HandleException.safe;
+
+/**
+ * Write-ahead log of the users and accounts, so they survive a restart. Every save or delete in a repository
+ * the log is attached to is appended as a binary entry with the complete new state of the entity and a log
+ * sequence number. Replaying the entries in order into empty repositories brings them back to the state
+ * they had when the last entry was written.
+ * <p>
+ * The log is used in three steps: the repositories are created with the log, {@link #replay} restores them,
+ * and after that their saves are logged. Entries are appended from within the save, before the repository
+ * changes, so the entries of one entity are in the order its saves were made and a save that cannot be
+ * logged is not made. When the entries reach the disk is decided by the {@link FsyncPolicy}, with
+ * {@link FsyncPolicy#ON_COMMIT} concurrent saves share one sync, made after the save has released its locks.
+ * <p>
+ * The log is kept in segment files named by the sequence number of their first entry. A {@link #snapshot}
+ * writes the state of all users and accounts to a file of its own, after which the segments before it are
+ * deleted, and {@link #replay} only has to load the latest snapshot and apply the entries written after it.
+ */
+public class StateLog implements AutoCloseable {
+    private static final byte USER = 1;
+    private static final byte ACCOUNT = 2;
+    private static final byte USER_DELETED = 3;
+    private static final byte ACCOUNT_DELETED = 4;
+    private static final byte SNAPSHOT_END = 5;
+    private static final int MAX_ENTRY_SIZE = 1 << 24;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final String SEGMENT_PATTERN = "state-\\d{20}\\.log";
+    private static final String SNAPSHOT_PATTERN = "state-\\d{20}\\.snapshot";
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    /**
+     * Held shared from appending an entry until its change is made, and exclusively to move to a new segment.
+     */
+    private final ReentrantReadWriteLock rollLock = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService syncScheduler;
+    private final Object snapshotLock = new Object();
+    private final EntryWriter entry = new EntryWriter();
+    private volatile FileChannel channel;
+    private long segmentFirstLsn;
+    private ScheduledExecutorService snapshotScheduler;
+    private volatile long lastLsn;
+    private volatile long durableLsn;
+    private volatile boolean replaying;
+
+    public StateLog(Path directory) {
+        this(directory, FsyncPolicy.ON_COMMIT, Duration.ZERO);
+    }
+
+    /**
+     * @param syncInterval how often entries are synced with {@link FsyncPolicy#PERIODIC}, ignored otherwise
+     */
+    public StateLog(Path directory, FsyncPolicy fsyncPolicy, Duration syncInterval) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        safe(() -> Files.createDirectories(directory), e -> "Cannot create state log directory " + directory);
+        if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+            syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "state-log-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncScheduler.scheduleWithFixedDelay(() -> sync(lastLsn), syncInterval.toNanos(), syncInterval.toNanos(), TimeUnit.NANOSECONDS);
+        } else
+            syncScheduler = null;
+    }
+
+    /**
+     * Applies all entries in the log to the repositories, which should be empty and created with this log,
+     * and opens the log for appending. An entry torn by a crash ends the log and is cut off.
+     *
+     * @return the number of entries applied
+     */
+    public long replay(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        replaying = true;
+        try {
+            List<Path> snapshots = files(SNAPSHOT_PATTERN);
+            long applied = snapshots.isEmpty() ? 0 : loadSnapshot(snapshots.get(snapshots.size() - 1), usersRepository, accountsRepository);
+            long snapshotLsn = lastLsn;
+            List<Path> segments = files(SEGMENT_PATTERN);
+            for (int i = 0; i < segments.size(); i++) {
+                Path segment = segments.get(i);
+                long end = 0;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), READ_BUFFER_SIZE))) {
+                    ByteBuffer body;
+                    while ((body = readEntry(in)) != null) {
+                        if (body.getLong(Byte.BYTES) > snapshotLsn) {
+                            apply(body, usersRepository, accountsRepository, false);
+                            applied++;
+                        }
+                        end += Integer.BYTES + body.limit() + Integer.BYTES;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Cannot read state log segment " + segment, e);
+                }
+                if (i == segments.size() - 1)
+                    openForAppend(segment, firstLsnOf(segment), end);
+            }
+            if (segments.isEmpty())
+                openForAppend(segmentFile(lastLsn + 1), lastLsn + 1, 0);
+            durableLsn = lastLsn;
+            return applied;
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Writes the state of all users and accounts to a new snapshot and deletes the log segments and the
+     * snapshot it replaces. Saves go on while the snapshot is written: it is started by moving the log to a
+     * new segment, and the entries written there after are applied on top of the snapshot when it is
+     * replayed. As each entry holds the complete state of its entity, applying it again to a snapshot that
+     * already has that state changes nothing, so replay ends in the state of the last entry.
+     * <p>
+     * Moving to the new segment waits for the saves and deletes that have appended their entry but not yet
+     * changed the repository, so every entry the snapshot replaces is in the repository before the snapshot
+     * reads it.
+     *
+     * @return the sequence number of the last entry the snapshot replaces
+     */
+    public long snapshot(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        synchronized (snapshotLock) {
+            long lsn = roll();
+            Path snapshot = snapshotFile(lsn);
+            Path written = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            safe(() -> {
+                writeSnapshot(written, lsn, usersRepository, accountsRepository);
+                return Files.move(written, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            }, e -> "Cannot write state snapshot " + snapshot);
+            for (Path segment : files(SEGMENT_PATTERN))
+                if (firstLsnOf(segment) <= lsn)
+                    safe(() -> Files.deleteIfExists(segment), e -> "Cannot delete state log segment " + segment);
+            for (Path replaced : files(SNAPSHOT_PATTERN))
+                if (!replaced.equals(snapshot))
+                    safe(() -> Files.deleteIfExists(replaced), e -> "Cannot delete state snapshot " + replaced);
+            return lsn;
+        }
+    }
+
+    /**
+     * Takes a {@link #snapshot} at a fixed interval until the log is closed.
+     */
+    public void startSnapshots(UsersRepository usersRepository, AccountsRepository accountsRepository, Duration interval) {
+        synchronized (snapshotLock) {
+            if (snapshotScheduler != null)
+                throw new IllegalStateException("Snapshots are already started");
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "state-log-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(() -> snapshot(usersRepository, accountsRepository),
+                    interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * The sequence number of the last entry appended to the log.
+     */
+    public long lastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * Syncs all appended entries and closes the log.
+     */
+    @Override
+    public void close() {
+        if (syncScheduler != null)
+            syncScheduler.shutdownNow();
+        synchronized (snapshotLock) {
+            if (snapshotScheduler != null)
+                snapshotScheduler.shutdownNow();
+        }
+        appendLock.lock();
+        try {
+            if (channel != null) {
+                sync(lastLsn);
+                safe(() -> {
+                    channel.close();
+                    return null;
+                }, e -> "Cannot close state log");
+                channel = null;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    EntityLog<User, String> users() {
+        return new EntityLog<>() {
+            @Override
+            public long saved(String id, User user, Runnable change) {
+                return log(USER, id, fieldsOf(user), change);
+            }
+
+            @Override
+            public long deleted(String id, User user, Runnable change) {
+                return log(USER_DELETED, id, entry -> {
+                }, change);
+            }
+
+            @Override
+            public void committed(long lsn) {
+                StateLog.this.committed(lsn);
+            }
+        };
+    }
+
+    EntityLog<Account, String> accounts() {
+        return new EntityLog<>() {
+            @Override
+            public long saved(String id, Account account, Runnable change) {
+                return log(ACCOUNT, id, fieldsOf(account), change);
+            }
+
+            @Override
+            public long deleted(String id, Account account, Runnable change) {
+                return log(ACCOUNT_DELETED, id, entry -> {
+                }, change);
+            }
+
+            @Override
+            public void committed(long lsn) {
+                StateLog.this.committed(lsn);
+            }
+        };
+    }
+
+    /**
+     * Appends the entry and then makes the change, or only makes the change while replaying.
+     *
+     * @return the sequence number of the entry, or 0 when none was appended
+     */
+    private long log(byte type, String id, Consumer<EntryWriter> fields, Runnable change) {
+        if (replaying) {
+            change.run();
+            return 0;
+        }
+        rollLock.readLock().lock();
+        try {
+            long lsn = append(type, id, fields);
+            change.run();
+            return lsn;
+        } finally {
+            rollLock.readLock().unlock();
+        }
+    }
+
+    private long append(byte type, String id, Consumer<EntryWriter> fields) {
+        long lsn;
+        appendLock.lock();
+        try {
+            if (channel == null)
+                throw new IllegalStateException("State log is not open, replay it before saving");
+            lsn = lastLsn + 1;
+            ByteBuffer buffer = entry.encode(type, lsn, id, fields);
+            while (buffer.hasRemaining())
+                safe(() -> channel.write(buffer), e -> "Cannot append to state log");
+            lastLsn = lsn;
+        } finally {
+            appendLock.unlock();
+        }
+        return lsn;
+    }
+
+    private void committed(long lsn) {
+        if (lsn > 0 && fsyncPolicy == FsyncPolicy.ON_COMMIT)
+            sync(lsn);
+    }
+
+    private static Consumer<EntryWriter> fieldsOf(User user) {
+        return entry -> entry
+                .putString(user.getName())
+                .putString(user.getPersonalIdentificationNumber())
+                .putBoolean(user.isActive());
+    }
+
+    private static Consumer<EntryWriter> fieldsOf(Account account) {
+        List<String> userIds = account.getUsers().map(User::getId).collect(Collectors.toList());
+        return entry -> {
+            entry.putString(account.getOwner().getId())
+                    .putString(account.getName())
+                    .putBoolean(account.isActive())
+                    .putInt(userIds.size());
+            userIds.forEach(entry::putString);
+        };
+    }
+
+    /**
+     * Moves appending to a new segment, with everything before it synced.
+     *
+     * @return the sequence number of the last entry before the new segment
+     */
+    private long roll() {
+        rollLock.writeLock().lock();
+        appendLock.lock();
+        try {
+            if (channel == null)
+                throw new IllegalStateException("State log is not open, replay it before taking a snapshot");
+            long lsn = lastLsn;
+            if (segmentFirstLsn == lsn + 1)
+                return lsn;
+            synchronized (syncLock) {
+                FileChannel previous = channel;
+                safe(() -> {
+                    previous.force(false);
+                    previous.close();
+                    return null;
+                }, e -> "Cannot close state log segment");
+                durableLsn = lsn;
+                openForAppend(segmentFile(lsn + 1), lsn + 1, 0);
+            }
+            return lsn;
+        } finally {
+            appendLock.unlock();
+            rollLock.writeLock().unlock();
+        }
+    }
+
+    private void writeSnapshot(Path file, long lsn, UsersRepository usersRepository, AccountsRepository accountsRepository) throws IOException {
+        EntryWriter writer = new EntryWriter();
+        long[] counts = new long[2];
+        try (FileChannel snapshot = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(snapshot), READ_BUFFER_SIZE);
+            for (User user : (Iterable<User>) usersRepository.all()::iterator) {
+                write(out, writer.encode(USER, lsn, user.getId(), fieldsOf(user)));
+                counts[0]++;
+            }
+            for (Account account : (Iterable<Account>) accountsRepository.all()::iterator) {
+                write(out, writer.encode(ACCOUNT, lsn, account.getId(), fieldsOf(account)));
+                counts[1]++;
+            }
+            write(out, writer.encode(SNAPSHOT_END, lsn, "", entry -> entry.putLong(counts[0]).putLong(counts[1])));
+            out.flush();
+            snapshot.force(true);
+        }
+    }
+
+    private static void write(OutputStream out, ByteBuffer entry) throws IOException {
+        out.write(entry.array(), 0, entry.limit());
+    }
+
+    /**
+     * Loads the users and then the accounts of a snapshot. Users saved for the first time after the snapshot
+     * was started may be missing from it while accounts they belong to are not, the entries that make them
+     * belong there come after the snapshot in the log, so such accounts and memberships are skipped here.
+     *
+     * @return the number of users and accounts loaded
+     */
+    private long loadSnapshot(Path snapshot, UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), READ_BUFFER_SIZE))) {
+            long loaded = 0;
+            ByteBuffer body;
+            while ((body = readEntry(in)) != null) {
+                if (body.get(0) == SNAPSHOT_END) {
+                    lastLsn = body.getLong(Byte.BYTES);
+                    return loaded;
+                }
+                apply(body, usersRepository, accountsRepository, true);
+                loaded++;
+            }
+            throw new IllegalStateException("State snapshot " + snapshot + " is incomplete");
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read state snapshot " + snapshot, e);
+        }
+    }
+
+    private void sync(long lsn) {
+        if (durableLsn >= lsn)
+            return;
+        synchronized (syncLock) {
+            if (durableLsn >= lsn)
+                return;
+            long target = lastLsn;
+            FileChannel current = channel;
+            if (current != null)
+                safe(() -> {
+                    current.force(false);
+                    return null;
+                }, e -> "Cannot sync state log");
+            durableLsn = target;
+        }
+    }
+
+    /**
+     * Encodes one entry: its length, the body and a checksum of the body. The buffer is reused for every
+     * entry and grows to fit the largest.
+     */
+    private static class EntryWriter {
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+        ByteBuffer encode(byte type, long lsn, String id, Consumer<EntryWriter> fields) {
+            buffer.clear();
+            putInt(0).put(type).putLong(lsn).putString(id);
+            fields.accept(this);
+            return seal();
+        }
+
+        EntryWriter put(byte value) {
+            ensureCapacity(Byte.BYTES);
+            buffer.put(value);
+            return this;
+        }
+
+        EntryWriter putBoolean(boolean value) {
+            return put((byte) (value ? 1 : 0));
+        }
+
+        EntryWriter putInt(int value) {
+            ensureCapacity(Integer.BYTES);
+            buffer.putInt(value);
+            return this;
+        }
+
+        EntryWriter putLong(long value) {
+            ensureCapacity(Long.BYTES);
+            buffer.putLong(value);
+            return this;
+        }
+
+        EntryWriter putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF)
+                throw new IllegalArgumentException("Text of " + bytes.length + " bytes is too long for the state log");
+            ensureCapacity(Short.BYTES + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+            return this;
+        }
+
+        /**
+         * Fills in the length, appends the checksum and returns the entry ready to be written.
+         */
+        private ByteBuffer seal() {
+            int length = buffer.position() - Integer.BYTES;
+            buffer.putInt(0, length);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), Integer.BYTES, length);
+            putInt((int) crc.getValue());
+            return buffer.flip();
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+        }
+    }
+
+    /**
+     * Reads the next entry, or null when the log ends, either cleanly or with a torn entry.
+     */
+    private static ByteBuffer readEntry(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_ENTRY_SIZE)
+                return null;
+            byte[] body = new byte[length];
+            in.readFully(body);
+            int checksum = in.readInt();
+            CRC32C crc = new CRC32C();
+            crc.update(body);
+            return (int) crc.getValue() == checksum ? ByteBuffer.wrap(body) : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void apply(ByteBuffer body, UsersRepository usersRepository, AccountsRepository accountsRepository, boolean fromSnapshot) {
+        byte type = body.get();
+        lastLsn = body.getLong();
+        String id = getString(body);
+        switch (type) {
+            case USER:
+                applyUser(id, body, usersRepository);
+                break;
+            case ACCOUNT:
+                applyAccount(id, body, usersRepository, accountsRepository, fromSnapshot);
+                break;
+            case USER_DELETED:
+                usersRepository.getEntityById(id).ifPresent(usersRepository::delete);
+                break;
+            case ACCOUNT_DELETED:
+                accountsRepository.getEntityById(id).ifPresent(accountsRepository::delete);
+                break;
+            default:
+                throw new IllegalStateException("Unknown state log entry type " + type + " at lsn " + lastLsn);
+        }
+    }
+
+    private static void applyUser(String id, ByteBuffer body, UsersRepository usersRepository) {
+        String name = getString(body);
+        String personalIdentificationNumber = getString(body);
+        boolean active = body.get() != 0;
+        User user = usersRepository.getEntityById(id).orElse(null);
+        if (user == null)
+            user = new UserImpl(id, name, personalIdentificationNumber, active);
+        else {
+            user.setName(name);
+            user.setPersonalIdentificationNumber(personalIdentificationNumber);
+            user.setActive(active);
+        }
+        usersRepository.save(user);
+    }
+
+    private static void applyAccount(String id, ByteBuffer body, UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                     boolean fromSnapshot) {
+        String ownerId = getString(body);
+        String name = getString(body);
+        boolean active = body.get() != 0;
+        int userCount = body.getInt();
+        Set<String> userIds = new LinkedHashSet<>();
+        for (int i = 0; i < userCount; i++)
+            userIds.add(getString(body));
+        if (fromSnapshot) {
+            if (usersRepository.getEntityById(ownerId).isEmpty())
+                return;
+            userIds.removeIf(userId -> usersRepository.getEntityById(userId).isEmpty());
+        }
+        User owner = userOf(ownerId, usersRepository);
+
+        Account account = accountsRepository.getEntityById(id).orElse(null);
+        if (account == null)
+            account = new AccountImpl(owner, name, id, active);
+        else {
+            account.setName(name);
+            account.setActive(active);
+            List<User> removed = account.getUsers()
+                    .filter(user -> !userIds.contains(user.getId()))
+                    .collect(Collectors.toList());
+            removed.forEach(account::removeUser);
+        }
+        for (String userId : userIds)
+            account.addUser(userOf(userId, usersRepository));
+        accountsRepository.save(account);
+    }
+
+    private static User userOf(String userId, UsersRepository usersRepository) {
+        return usersRepository.getEntityById(userId)
+                .orElseThrow(() -> new IllegalStateException("User " + userId + " in state log not found"));
+    }
+
+    private static String getString(ByteBuffer body) {
+        int length = Short.toUnsignedInt(body.getShort());
+        String value = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    private void openForAppend(Path segment, long firstLsn, long end) {
+        segmentFirstLsn = firstLsn;
+        channel = safe(() -> {
+            FileChannel opened = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            opened.truncate(end);
+            opened.position(end);
+            return opened;
+        }, e -> "Cannot open state log segment " + segment);
+    }
+
+    private List<Path> files(String pattern) {
+        return safe(() -> {
+            try (var files = Files.list(directory)) {
+                return files
+                        .filter(file -> file.getFileName().toString().matches(pattern))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }, e -> "Cannot list state log directory " + directory);
+    }
+
+    private Path segmentFile(long firstLsn) {
+        return directory.resolve(String.format("state-%020d.log", firstLsn));
+    }
+
+    private Path snapshotFile(long lsn) {
+        return directory.resolve(String.format("state-%020d.snapshot", lsn));
+    }
+
+    private static long firstLsnOf(Path segment) {
+        return Long.parseLong(segment.getFileName().toString().substring("state-".length(), "state-".length() + 20));
+    }
+}
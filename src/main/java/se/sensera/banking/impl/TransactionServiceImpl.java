@@ -0,0 +1,516 @@
+package se.sensera.banking.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import se.sensera.banking.*;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.CriticalError;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.utils.Cents;
+import se.sensera.banking.utils.IdempotencyCache;
+import se.sensera.banking.utils.StripedLocks;
+import se.sensera.banking.utils.TimestampParser;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class TransactionServiceImpl implements TransactionService, AutoCloseable {
+    private static final int ACCOUNT_LOCK_STRIPES = 1024;
+    private static final int MONITOR_CAPACITY = 1024;
+    private static final int GROUP_COMMIT_SIZE = 4096;
+    private static final int RESERVE_ATTEMPTS_BEFORE_LOCKING = 16;
+    private static final int IDEMPOTENCY_KEYS = 100_000;
+    private static final Duration IDEMPOTENCY_KEY_TTL = Duration.ofHours(1);
+
+    private final UsersRepository usersRepository;
+    private final AccountsRepository accountsRepository;
+    private final TransactionsRepository transactionsRepository;
+    private final IdGenerator idGenerator;
+    private final TimestampParser timestampParser = new TimestampParser(ZoneId.systemDefault());
+    private final StripedLocks accountLocks = new StripedLocks(ACCOUNT_LOCK_STRIPES);
+    private final StripedLocks commitLocks = new StripedLocks(ACCOUNT_LOCK_STRIPES);
+    private final List<MonitorDispatcher<Transaction>> monitors = new CopyOnWriteArrayList<>();
+    private final List<MonitorOutbox<Transaction>> outboxes = IntStream.range(0, commitLocks.size())
+            .mapToObj(stripe -> new MonitorOutbox<Transaction>())
+            .collect(Collectors.toList());
+    private final BalanceLedger ledger = new BalanceLedger();
+    private final IdempotencyCache<IdempotencyKey, Transaction> idempotentTransactions = new IdempotencyCache<>(IDEMPOTENCY_KEYS, IDEMPOTENCY_KEY_TTL);
+    private volatile boolean ledgerLoaded;
+    private volatile boolean ledgerVerification;
+
+    public TransactionServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository, TransactionsRepository transactionsRepository) {
+        this(usersRepository, accountsRepository, transactionsRepository, SnowflakeIdGenerator.DEFAULT);
+    }
+
+    public TransactionServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository, TransactionsRepository transactionsRepository, IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+        this.usersRepository = usersRepository;
+        this.accountsRepository = accountsRepository;
+        this.transactionsRepository = transactionsRepository;
+    }
+
+    @Override
+    public Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException {
+        User user = getUser(Activity.CREATE_TRANSACTION, userId);
+        Account account = getAccount(Activity.CREATE_TRANSACTION, accountId);
+        verifyCreatingTransaction(user, account);
+        long createdMinute = parseEpochMinute(Activity.CREATE_TRANSACTION, created);
+        long amountInCents = Cents.ofAmount(amount);
+        loadLedger();
+
+        if (ledgerVerification)
+            verified(ledger.balance(accountId), accountId, Long.MAX_VALUE);
+        if (amountInCents < 0 && !reserve(accountId, amountInCents))
+            throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_FUNDED);
+
+        Transaction transaction;
+        Lock lock = commitLocks.lockFor(accountId);
+        lock.lock();
+        try {
+            try {
+                transaction = transactionsRepository.save(new TransactionImpl(idGenerator.nextId(), toDate(createdMinute), user, account, Cents.toAmount(amountInCents)));
+            } catch (RuntimeException e) {
+                if (amountInCents < 0)
+                    ledger.credit(accountId, -amountInCents);
+                throw e;
+            }
+            if (amountInCents < 0)
+                ledger.record(accountId, createdMinute, amountInCents);
+            else
+                ledger.add(accountId, createdMinute, amountInCents);
+            publish(transaction);
+        } finally {
+            lock.unlock();
+            dispatch(List.of(accountId));
+        }
+        return transaction;
+    }
+
+    /**
+     * Reserves the amount on the debited account first, the one step that can fail, and then saves both
+     * legs in one write. No lock is held at any point, so transfers in opposite directions cannot deadlock.
+     * When the write fails, a leg the repository saved anyway is deleted again, so that either both legs or
+     * neither are kept.
+     */
+    @Override
+    public Transfer transfer(String created, String userId, String fromAccountId, String toAccountId, double amount) throws UseException {
+        User user = getUser(Activity.TRANSFER, userId);
+        Account fromAccount = getAccount(Activity.TRANSFER, fromAccountId);
+        Account toAccount = getAccount(Activity.TRANSFER, toAccountId);
+        if (!fromAccount.isActive() || !toAccount.isActive())
+            throw new UseException(Activity.TRANSFER, UseExceptionType.ACCOUNT_NOT_ACTIVE);
+        long amountInCents = Cents.ofAmount(amount);
+        if (amountInCents <= 0 || fromAccountId.equals(toAccountId) || !isOwnerOrUser(user, fromAccount))
+            throw new UseException(Activity.TRANSFER, UseExceptionType.NOT_ALLOWED);
+        long createdMinute = parseEpochMinute(Activity.TRANSFER, created);
+        loadLedger();
+
+        if (ledgerVerification)
+            verified(ledger.balance(fromAccountId), fromAccountId, Long.MAX_VALUE);
+        if (!reserve(fromAccountId, -amountInCents))
+            throw new UseException(Activity.TRANSFER, UseExceptionType.NOT_FUNDED);
+
+        Transaction debit = new TransactionImpl(idGenerator.nextId(), toDate(createdMinute), user, fromAccount, Cents.toAmount(-amountInCents));
+        Transaction credit = new TransactionImpl(idGenerator.nextId(), toDate(createdMinute), user, toAccount, Cents.toAmount(amountInCents));
+        List<ReentrantLock> locks = lockCommits(List.of(fromAccountId, toAccountId));
+        try {
+            try {
+                transactionsRepository.saveAll(List.of(debit, credit));
+            } catch (RuntimeException e) {
+                if (undoSave(debit, e))
+                    ledger.credit(fromAccountId, amountInCents);
+                else {
+                    ledger.record(fromAccountId, createdMinute, -amountInCents);
+                    publish(debit);
+                }
+                if (!undoSave(credit, e)) {
+                    ledger.add(toAccountId, createdMinute, amountInCents);
+                    publish(credit);
+                }
+                throw e;
+            }
+            ledger.record(fromAccountId, createdMinute, -amountInCents);
+            ledger.add(toAccountId, createdMinute, amountInCents);
+            publish(debit);
+            publish(credit);
+        } finally {
+            locks.forEach(Lock::unlock);
+            dispatch(List.of(fromAccountId, toAccountId));
+        }
+        return new Transfer(debit, credit);
+    }
+
+    /**
+     * Deletes a transaction the repository may have saved before a write failed.
+     *
+     * @return true when the transaction is not in the repository, false when it was saved and could not be
+     * deleted, in which case it has to be counted like any other saved transaction
+     */
+    private boolean undoSave(Transaction transaction, RuntimeException cause) {
+        if (transactionsRepository.getEntityById(transaction.getId()).isEmpty())
+            return true;
+        try {
+            transactionsRepository.delete(transaction);
+            return true;
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+            return false;
+        }
+    }
+
+    /**
+     * Takes the commit locks of the accounts. Transactions are saved and published while holding the commit
+     * locks of their accounts, so that every monitor gets the transactions of an account in the order they
+     * were saved. Funding does not take these locks.
+     */
+    private List<ReentrantLock> lockCommits(Collection<String> accountIds) {
+        List<ReentrantLock> locks = commitLocks.locksFor(accountIds);
+        locks.forEach(Lock::lock);
+        return locks;
+    }
+
+    /**
+     * Puts a saved transaction in the outbox of its account's commit stripe. It is given to the monitors by
+     * {@link #dispatch}, once the commit locks are released.
+     */
+    private void publish(Transaction transaction) {
+        outboxes.get(commitLocks.indexOf(transaction.getAccount().getId())).add(transaction);
+    }
+
+    /**
+     * Gives the published transactions of the accounts' commit stripes to the monitors. Called after the
+     * commit locks are released, so a monitor that makes publishers wait, or one that creates transactions
+     * itself, never holds up the commits of an account.
+     */
+    private void dispatch(Collection<String> accountIds) {
+        accountIds.stream()
+                .mapToInt(commitLocks::indexOf)
+                .distinct()
+                .forEach(stripe -> outboxes.get(stripe).drain(transaction -> monitors.forEach(monitor -> monitor.publish(transaction))));
+    }
+
+    /**
+     * Reserves a withdrawal with compare-and-set. After a number of lost races the account's lock stripe is
+     * taken, so that under heavy contention the withdrawals queue up rather than all keep spinning.
+     */
+    private boolean reserve(String accountId, long amount) {
+        for (int attempt = 0; attempt < RESERVE_ATTEMPTS_BEFORE_LOCKING; attempt++) {
+            BalanceLedger.Reservation reservation = ledger.tryReserve(accountId, amount);
+            if (reservation != BalanceLedger.Reservation.CONTENDED)
+                return reservation == BalanceLedger.Reservation.RESERVED;
+        }
+        Lock lock = accountLocks.lockFor(accountId);
+        lock.lock();
+        try {
+            BalanceLedger.Reservation reservation;
+            while ((reservation = ledger.tryReserve(accountId, amount)) == BalanceLedger.Reservation.CONTENDED)
+                Thread.onSpinWait();
+            return reservation == BalanceLedger.Reservation.RESERVED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Transaction createTransaction(String idempotencyKey, String created, String userId, String accountId, double amount) throws UseException {
+        Transaction transaction = idempotentTransactions.computeIfAbsent(new IdempotencyKey(userId, idempotencyKey),
+                () -> createTransaction(created, userId, accountId, amount));
+        if (!transaction.getAccount().getId().equals(accountId) || transaction.getAmountInCents() != Cents.ofAmount(amount))
+            throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.IDEMPOTENCY_KEY_REUSED, idempotencyKey);
+        return transaction;
+    }
+
+    /**
+     * Idempotency keys are chosen by the clients, so each user has keys of their own.
+     */
+    @Value
+    private static class IdempotencyKey {
+        String userId;
+        String key;
+    }
+
+    @Override
+    public List<TransactionResult> createTransactions(List<TransactionRequest> requests) {
+        Map<String, Optional<User>> users = new HashMap<>();
+        Map<String, Optional<Account>> accounts = new HashMap<>();
+        TransactionResult[] results = new TransactionResult[requests.size()];
+        List<PendingTransaction> pending = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            TransactionRequest request = requests.get(i);
+            try {
+                User user = users.computeIfAbsent(request.getUserId(), usersRepository::getEntityById)
+                        .orElseThrow(() -> new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.USER_NOT_FOUND));
+                Account account = accounts.computeIfAbsent(request.getAccountId(), accountsRepository::getEntityById)
+                        .orElseThrow(() -> new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.ACCOUNT_NOT_FOUND));
+                verifyCreatingTransaction(user, account);
+                pending.add(new PendingTransaction(i, user, account, parseEpochMinute(Activity.CREATE_TRANSACTION, request.getCreated()), Cents.ofAmount(request.getAmount())));
+            } catch (UseException e) {
+                results[i] = TransactionResult.failure(e);
+            }
+        }
+        loadLedger();
+
+        for (int from = 0; from < pending.size(); from += GROUP_COMMIT_SIZE)
+            commit(pending.subList(from, Math.min(from + GROUP_COMMIT_SIZE, pending.size())), results);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Parses a timestamp given by a client, which is a use error rather than a bug when it is invalid.
+     */
+    private long parseEpochMinute(Activity activity, String timestamp) throws UseException {
+        try {
+            return timestampParser.parseEpochMinute(timestamp);
+        } catch (IllegalArgumentException e) {
+            throw new UseException(activity, UseExceptionType.INVALID_TIMESTAMP, timestamp);
+        }
+    }
+
+    /**
+     * Funds and saves a group of transactions with one write to the repository. Deposits in the group are
+     * not available to anyone else until the group is committed, but do fund the later withdrawals of the
+     * group on the same account. The rest of a withdrawal is reserved like a single one.
+     */
+    private void commit(List<PendingTransaction> group, TransactionResult[] results) {
+        Map<String, Long> credits = new HashMap<>();
+        List<Transaction> transactions = new ArrayList<>(group.size());
+        long[] reserved = new long[group.size()];
+        List<PendingTransaction> funded = new ArrayList<>(group.size());
+        for (PendingTransaction pendingTransaction : group) {
+            String accountId = pendingTransaction.account.getId();
+            if (ledgerVerification && !credits.containsKey(accountId))
+                verified(ledger.balance(accountId), accountId, Long.MAX_VALUE);
+            long credit = credits.getOrDefault(accountId, 0L);
+            if (pendingTransaction.amount >= 0)
+                credits.put(accountId, credit + pendingTransaction.amount);
+            else {
+                long fromCredit = Math.min(credit, -pendingTransaction.amount);
+                long toReserve = -pendingTransaction.amount - fromCredit;
+                if (toReserve > 0 && !reserve(accountId, -toReserve)) {
+                    credits.put(accountId, credit);
+                    results[pendingTransaction.index] = TransactionResult.failure(new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_FUNDED));
+                    continue;
+                }
+                credits.put(accountId, credit - fromCredit);
+                reserved[transactions.size()] = toReserve;
+            }
+            Transaction transaction = new TransactionImpl(idGenerator.nextId(), toDate(pendingTransaction.createdMinute),
+                    pendingTransaction.user, pendingTransaction.account, Cents.toAmount(pendingTransaction.amount));
+            transactions.add(transaction);
+            funded.add(pendingTransaction);
+            results[pendingTransaction.index] = TransactionResult.success(transaction);
+        }
+
+        List<ReentrantLock> locks = lockCommits(credits.keySet());
+        try {
+            try {
+                transactionsRepository.saveAll(transactions);
+            } catch (RuntimeException e) {
+                commitSaved(transactions, funded, reserved, results, e);
+                return;
+            }
+            transactions.forEach(transaction -> ledger.record(transaction.getAccount().getId(), transaction.getCreatedEpochMinute(), transaction.getAmountInCents()));
+            credits.forEach(ledger::credit);
+            transactions.forEach(this::publish);
+        } finally {
+            locks.forEach(Lock::unlock);
+            dispatch(credits.keySet());
+        }
+    }
+
+    /**
+     * After a group write failed, keeps the transactions the repository saved anyway and fails the others.
+     * A saved withdrawal keeps its reservation, and the part of it funded by deposits of the group is taken
+     * from the available balance, so it is counted even when the deposit funding it was not saved. The
+     * reservations of the others are given back.
+     */
+    private void commitSaved(List<Transaction> transactions, List<PendingTransaction> funded, long[] reserved, TransactionResult[] results, RuntimeException cause) {
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction transaction = transactions.get(i);
+            String accountId = transaction.getAccount().getId();
+            if (transactionsRepository.getEntityById(transaction.getId()).isPresent()) {
+                ledger.record(accountId, transaction.getCreatedEpochMinute(), transaction.getAmountInCents());
+                ledger.credit(accountId, transaction.getAmountInCents() + reserved[i]);
+                publish(transaction);
+            } else {
+                ledger.credit(accountId, reserved[i]);
+                UseException notSaved = new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_SAVED);
+                notSaved.initCause(cause);
+                results[funded.get(i).index] = TransactionResult.failure(notSaved);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingTransaction {
+        final int index;
+        final User user;
+        final Account account;
+        final long createdMinute;
+        final long amount;
+    }
+
+    private void verifyCreatingTransaction(User user, Account account) throws UseException {
+        if (!account.isActive())
+            throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.ACCOUNT_NOT_ACTIVE);
+        if (!isOwnerOrUser(user, account))
+            throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_ALLOWED);
+    }
+
+    @Override
+    public double sum(String created, String userId, String accountId) throws UseException {
+        return Cents.toAmount(sumInCents(created, userId, accountId));
+    }
+
+    @Override
+    public long sumInCents(String created, String userId, String accountId) throws UseException {
+        User user = getUser(Activity.SUM_TRANSACTION, userId);
+        Account account = getAccount(Activity.SUM_TRANSACTION, accountId);
+        if (!isOwnerOrUser(user, account))
+            throw new UseException(Activity.SUM_TRANSACTION, UseExceptionType.NOT_ALLOWED);
+        long createdMinute = parseEpochMinute(Activity.SUM_TRANSACTION, created);
+        loadLedger();
+
+        return verified(ledger.balanceAt(accountId, createdMinute), accountId, createdMinute);
+    }
+
+    @Override
+    public long periodSumInCents(String userId, String from, String to) throws UseException {
+        User user = getUser(Activity.SUM_TRANSACTION, userId);
+        long createdFromMillis = TimestampParser.toEpochMillis(parseEpochMinute(Activity.SUM_TRANSACTION, from) - 1) + 1;
+        long createdToMillis = TimestampParser.toEpochMillis(parseEpochMinute(Activity.SUM_TRANSACTION, to));
+        Set<String> accountIds = accountsRepository.accountsByUserIndex()
+                .map(index -> index.find(userId))
+                .orElseGet(() -> accountsRepository.all().filter(account -> isOwnerOrUser(user, account)))
+                .map(Account::getId)
+                .collect(Collectors.toSet());
+
+        return transactionsRepository.columns()
+                .map(columns -> columns.sumInCents(accountIds, createdFromMillis, createdToMillis))
+                .orElseGet(() -> transactionsRepository.all()
+                        .filter(transaction -> accountIds.contains(transaction.getAccount().getId()))
+                        .filter(transaction -> transaction.getCreated().getTime() >= createdFromMillis
+                                && transaction.getCreated().getTime() <= createdToMillis)
+                        .mapToLong(transaction -> Cents.ofAmount(transaction.getAmount()))
+                        .sum());
+    }
+
+    /**
+     * When switched on, every balance read from the ledger is cross-checked against a full scan of the
+     * transactions repository. Intended for tests, where no transactions are created concurrently with the check.
+     */
+    public void setLedgerVerification(boolean ledgerVerification) {
+        this.ledgerVerification = ledgerVerification;
+    }
+
+    private long verified(long ledgerSum, String accountId, long createdMinute) {
+        if (ledgerVerification) {
+            long scannedSum = scanSum(accountId, createdMinute);
+            if (scannedSum != ledgerSum)
+                throw new CriticalError("Ledger balance " + ledgerSum + " cents of account " + accountId + " differs from transactions sum " + scannedSum + " cents");
+        }
+        return ledgerSum;
+    }
+
+    private long scanSum(String accountId, long createdMinute) {
+        return transactionsRepository.columns()
+                .map(columns -> columns.sumInCents(accountId, TimestampParser.toEpochMillis(createdMinute)))
+                .orElseGet(() -> transactionsRepository.all()
+                        .filter(transaction -> transaction.getAccount().getId().equals(accountId))
+                        .filter(transaction -> TimestampParser.epochMinuteAtOrAfter(transaction.getCreated().getTime()) <= createdMinute)
+                        .mapToLong(transaction -> Cents.ofAmount(transaction.getAmount()))
+                        .sum());
+    }
+
+    private void loadLedger() {
+        if (!ledgerLoaded) {
+            synchronized (ledger) {
+                if (!ledgerLoaded) {
+                    transactionsRepository.columns().ifPresentOrElse(
+                            columns -> columns.forEach((accountId, createdMillis, amountInCents) ->
+                                    ledger.add(accountId, TimestampParser.epochMinuteAtOrAfter(createdMillis), amountInCents)),
+                            () -> ledger.load(transactionsRepository.all()));
+                    ledgerLoaded = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Monitors are called on a thread of their own, one per monitor, and never on the thread creating the
+     * transaction. A monitor that falls more than 1024 transactions behind makes the thread handing over
+     * transactions wait, but never while it holds up the commits of an account.
+     */
+    @Override
+    public void addMonitor(Consumer<Transaction> monitor) {
+        addMonitor(monitor, MONITOR_CAPACITY, MonitorDispatcher.BackpressurePolicy.BLOCK);
+    }
+
+    public void addMonitor(Consumer<Transaction> monitor, int capacity, MonitorDispatcher.BackpressurePolicy policy) {
+        monitors.add(new MonitorDispatcher<>(monitor, capacity, policy));
+    }
+
+    @Override
+    public void addBatchMonitor(Consumer<List<Transaction>> monitor, int maxBatch, Duration maxDelay) {
+        addBatchMonitor(monitor, maxBatch, maxDelay, Math.max(MONITOR_CAPACITY, maxBatch), MonitorDispatcher.BackpressurePolicy.BLOCK);
+    }
+
+    public void addBatchMonitor(Consumer<List<Transaction>> monitor, int maxBatch, Duration maxDelay, int capacity, MonitorDispatcher.BackpressurePolicy policy) {
+        monitors.add(new MonitorDispatcher<>(monitor, maxBatch, maxDelay, capacity, policy));
+    }
+
+    /**
+     * Removes the monitors and stops their threads, once each monitor has been given the transactions created
+     * before. Transactions created later are not given to them.
+     */
+    @Override
+    public void close() {
+        List<MonitorDispatcher<Transaction>> closing = new ArrayList<>(monitors);
+        monitors.removeAll(closing);
+        closing.forEach(MonitorDispatcher::close);
+    }
+
+    /**
+     * Metrics of every monitor, in the order the monitors were added.
+     */
+    public List<MonitorMetrics> monitorMetrics() {
+        return monitors.stream()
+                .map(MonitorDispatcher::metrics)
+                .collect(Collectors.toList());
+    }
+
+    private User getUser(Activity activity, String userId) throws UseException {
+        return usersRepository.getEntityById(userId)
+                .orElseThrow(() -> new UseException(activity, UseExceptionType.USER_NOT_FOUND));
+    }
+
+    private Account getAccount(Activity activity, String accountId) throws UseException {
+        return accountsRepository.getEntityById(accountId)
+                .orElseThrow(() -> new UseException(activity, UseExceptionType.ACCOUNT_NOT_FOUND));
+    }
+
+    private boolean isOwnerOrUser(User user, Account account) {
+        return account.getOwner().getId().equals(user.getId())
+                || account.getUsers().anyMatch(accountUser -> accountUser.getId().equals(user.getId()));
+    }
+
+    private static Date toDate(long epochMinute) {
+        return new Date(TimestampParser.toEpochMillis(epochMinute));
+    }
+}
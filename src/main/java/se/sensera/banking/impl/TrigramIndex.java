@@ -0,0 +1,103 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Repository;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Substring index over a text field of the entities. The text is lower-cased once when an entity is saved
+ * and every run of three characters in it is posted to the entity's id, so a search only has to check the
+ * entities posted to the rarest trigram of the searched text instead of all of them. Searches shorter than
+ * a trigram check the stored lower-cased texts, which still saves lower-casing them on every call.
+ */
+public class TrigramIndex<E extends Repository.Entity<I>, I> implements EntityIndex<E, I> {
+    static final int GRAM = 3;
+
+    private final Function<E, String> textOf;
+    private final ConcurrentHashMap<I, String> textsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<I>> idsByTrigram = new ConcurrentHashMap<>();
+
+    public TrigramIndex(Function<E, String> textOf) {
+        this.textOf = textOf;
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Ids of the entities whose lower-cased text contains {@code text}, in no particular order. The searched
+     * text is used as given, so text with upper case letters finds nothing.
+     */
+    public Stream<I> idsOf(String text) {
+        if (text.length() < GRAM)
+            return textsById.entrySet().stream()
+                    .filter(entry -> entry.getValue().contains(text))
+                    .map(ConcurrentHashMap.Entry::getKey);
+        Set<I> candidates = null;
+        for (String trigram : trigramsOf(text)) {
+            Set<I> ids = idsByTrigram.getOrDefault(trigram, Collections.emptySet());
+            if (candidates == null || ids.size() < candidates.size())
+                candidates = ids;
+        }
+        return candidates.stream()
+                .filter(id -> {
+                    String stored = textsById.get(id);
+                    return stored != null && stored.contains(text);
+                });
+    }
+
+    @Override
+    public void saved(I id, E entity) {
+        String text = normalize(textOf.apply(entity));
+        String previousText = textsById.put(id, text);
+        if (text.equals(previousText))
+            return;
+        Set<String> trigrams = trigramsOf(text);
+        if (previousText != null)
+            trigramsOf(previousText).stream()
+                    .filter(trigram -> !trigrams.contains(trigram))
+                    .forEach(trigram -> remove(trigram, id));
+        trigrams.forEach(trigram -> add(trigram, id));
+    }
+
+    @Override
+    public void deleted(I id, E entity) {
+        String text = textsById.remove(id);
+        if (text != null)
+            trigramsOf(text).forEach(trigram -> remove(trigram, id));
+    }
+
+    /**
+     * Adds the id within the map's compute, so that it cannot go into a posting set {@link #remove} has just
+     * taken out of the map for being empty.
+     */
+    private void add(String trigram, I id) {
+        idsByTrigram.compute(trigram, (t, ids) -> {
+            if (ids == null)
+                ids = ConcurrentHashMap.newKeySet();
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    private void remove(String trigram, I id) {
+        idsByTrigram.computeIfPresent(trigram, (t, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static Set<String> trigramsOf(String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++)
+            trigrams.add(text.substring(i, i + GRAM));
+        return trigrams;
+    }
+}
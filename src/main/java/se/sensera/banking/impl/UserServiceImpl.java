@@ -1,38 +1,72 @@
 package se.sensera.banking.impl;
 
+import se.sensera.banking.IdGenerator;
+import se.sensera.banking.LookupIndex;
+import se.sensera.banking.Page;
+import se.sensera.banking.UniqueIndex;
 import se.sensera.banking.User;
 import se.sensera.banking.UserService;
 import se.sensera.banking.UsersRepository;
 import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.utils.KeysetUtils;
 import se.sensera.banking.utils.ListUtils;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public class UserServiceImpl implements UserService {
     private UsersRepository usersRepository;
+    private final IdGenerator idGenerator;
 
     public UserServiceImpl(UsersRepository usersRepository) {
+        this(usersRepository, SnowflakeIdGenerator.DEFAULT);
+    }
 
+    public UserServiceImpl(UsersRepository usersRepository, IdGenerator idGenerator) {
         this.usersRepository = usersRepository;
+        this.idGenerator = idGenerator;
     }
 
     @java.lang.Override
     public User createUser(String name, String personalIdentificationNumber) throws UseException {
-        verifyPersonalIdentificationNumberDuplicated(personalIdentificationNumber);
+        UserImpl user = new UserImpl(idGenerator.nextId(), name, personalIdentificationNumber, true);
+        claimPersonalIdentificationNumber(Activity.CREATE_USER, personalIdentificationNumber, user.getId());
 
-        UserImpl user = new UserImpl(UUID.randomUUID().toString(), name, personalIdentificationNumber, true);
-        return usersRepository.save(user);
+        return save(user, personalIdentificationNumber);
     }
 
-    private void verifyPersonalIdentificationNumberDuplicated(String personalIdentificationNumber) throws UseException {
-        if (usersRepository.all()
-                .anyMatch(user1 -> user1.getPersonalIdentificationNumber().equals(personalIdentificationNumber)))
-            throw new UseException(Activity.CREATE_USER, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
+    /**
+     * Saves the user, releasing the personal identification number claimed for it when the save fails, so
+     * that a user that was never stored does not keep the number from others.
+     */
+    private User save(User user, String claimedPersonalIdentificationNumber) {
+        try {
+            return usersRepository.save(user);
+        } catch (RuntimeException e) {
+            if (claimedPersonalIdentificationNumber != null)
+                usersRepository.personalIdentificationNumberIndex()
+                        .ifPresent(index -> index.release(claimedPersonalIdentificationNumber, user.getId()));
+            throw e;
+        }
+    }
+
+    /**
+     * Claims the personal identification number in the repository's unique index, which is atomic, or
+     * falls back to scanning all users when the repository has no such index.
+     */
+    private void claimPersonalIdentificationNumber(Activity activity, String personalIdentificationNumber, String userId) throws UseException {
+        Optional<UniqueIndex<String, String>> index = usersRepository.personalIdentificationNumberIndex();
+        boolean unique = index.isPresent()
+                ? index.get().claim(personalIdentificationNumber, userId)
+                : usersRepository.all().noneMatch(user1 -> user1.getPersonalIdentificationNumber().equals(personalIdentificationNumber));
+        if (!unique)
+            throw new UseException(activity, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
     }
 
     @java.lang.Override
@@ -40,6 +74,7 @@ public class UserServiceImpl implements UserService {
         User user = getUser1(userId);
 
         AtomicBoolean save = new AtomicBoolean(false);
+        AtomicReference<String> claimed = new AtomicReference<>();
         changeUser.accept(new ChangeUser() {
             @Override
             public void setName(String name) {
@@ -49,10 +84,9 @@ public class UserServiceImpl implements UserService {
 
             @Override
             public void setPersonalIdentificationNumber(String personalIdentificationNumber) throws UseException {
-                if (usersRepository.all()
-                        .anyMatch(userToCheck -> userToCheck.getPersonalIdentificationNumber().equals(personalIdentificationNumber))) {
-                    throw new UseException(Activity.UPDATE_USER, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
-                }
+                claimPersonalIdentificationNumber(Activity.UPDATE_USER, personalIdentificationNumber, user.getId());
+                if (!personalIdentificationNumber.equals(user.getPersonalIdentificationNumber()))
+                    claimed.set(personalIdentificationNumber);
 
                 user.setPersonalIdentificationNumber(personalIdentificationNumber);
                 save.set(true);
@@ -61,7 +95,7 @@ public class UserServiceImpl implements UserService {
 
         if (!save.get())
             return user;
-        return usersRepository.save(user);
+        return save(user, claimed.get());
 
 
     }
@@ -98,14 +132,33 @@ public class UserServiceImpl implements UserService {
     @Override
     public Stream<User> find(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder) {
 
-        Stream<User> all = usersRepository.all();
         if (sortOrder == SortOrder.PersonalId) {
-            all = all.sorted(Comparator.comparing(User::getPersonalIdentificationNumber));
+            return ListUtils.applySortedPage(usersRepository.orderedIndex(SortOrder.PersonalId), usersRepository::all, user -> true,
+                    Comparator.comparing(User::getPersonalIdentificationNumber), pageNumber, pageSize);
         } else if (pageNumber == null && pageNumber == null && !SortOrder.PersonalId.equals(sortOrder) && !SortOrder.Name.equals(sortOrder) && searchString == "") {  // Dont show inactivated user
-            all = all.filter(User::isActive);
-        } else
-            all = all.filter(user -> user.getName().toLowerCase().contains(searchString)).sorted(Comparator.comparing(User::getName));
+            return usersRepository.all().filter(User::isActive);
+        }
+
+        Optional<LookupIndex<String, User>> nameSearchIndex = searchString.isEmpty() ? Optional.empty() : usersRepository.nameSearchIndex();
+        return nameSearchIndex
+                .map(index -> ListUtils.applySortedPage(index.find(searchString), Comparator.comparing(User::getName), pageNumber, pageSize))
+                .orElseGet(() -> ListUtils.applySortedPage(usersRepository.orderedIndex(SortOrder.Name), usersRepository::all,
+                        user -> user.getName().toLowerCase().contains(searchString), Comparator.comparing(User::getName), pageNumber, pageSize));
+    }
+
+    @Override
+    public Page<User> findAfter(String cursor, int pageSize, SortOrder sortOrder) {
+        return KeysetUtils.applyKeysetPage(usersRepository.orderedIndex(sortOrder), usersRepository::all, sortKeyOf(sortOrder), cursor, pageSize);
+    }
 
-        return ListUtils.applyPage(all, pageNumber, pageSize);
+    private static Function<User, String> sortKeyOf(SortOrder sortOrder) {
+        switch (sortOrder) {
+            case Name:
+                return User::getName;
+            case PersonalId:
+                return User::getPersonalIdentificationNumber;
+            default:
+                return User::getId;
+        }
     }
 }
@@ -0,0 +1,21 @@
+package se.sensera.banking.utils;
+
+/**
+ * Conversions between amounts as doubles and exact amounts in cents. Balances are kept in cents so that
+ * summing any number of transactions is exact, the doubles are only a view for the callers.
+ */
+public interface Cents {
+    long CENTS_PER_UNIT = 100;
+
+    /**
+     * The amount rounded to the nearest cent, halves away from zero.
+     */
+    static long ofAmount(double amount) {
+        double cents = amount * CENTS_PER_UNIT;
+        return (long) (cents < 0 ? -Math.floor(-cents + 0.5) : Math.floor(cents + 0.5));
+    }
+
+    static double toAmount(long cents) {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+}
@@ -0,0 +1,122 @@
+package se.sensera.banking.utils;
+
+import se.sensera.banking.exceptions.HandleException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the outcome of an operation by the key its caller gave it, so that a retry with the same key gets
+ * the original result instead of running the operation again. A retry that arrives while the operation is
+ * still running waits for it. Failed operations are not remembered, so they can be retried.
+ * <p>
+ * Lookups are a single hash map access. Keys expire after a fixed time, and when more than the maximum number
+ * of keys are held the oldest are forgotten first, even if they have not expired. The keys of failed and of
+ * replaced operations stay in the insertion order until they reach its head, but count towards the maximum
+ * there too, so memory stays bounded however many operations fail.
+ */
+public class IdempotencyCache<K, V> {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Keyed<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public IdempotencyCache(int maxEntries, Duration ttl) {
+        this(maxEntries, ttl, System::nanoTime);
+    }
+
+    public IdempotencyCache(int maxEntries, Duration ttl, LongSupplier nanoClock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * The result remembered for the key, or else the result of {@code operation}, which is then remembered.
+     */
+    public <E extends Exception> V computeIfAbsent(K key, HandleException.Safe<E, V> operation) throws E {
+        long now = nanoClock.getAsLong();
+        Entry<V> entry = new Entry<>(now + ttlNanos);
+        Entry<V> existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null) {
+            if (existing.expiresAt - now > 0)
+                return existing.await();
+            entries.remove(key, existing);
+        }
+        insertionOrder.add(new Keyed<>(key, entry));
+        queued.incrementAndGet();
+        evict(now);
+
+        try {
+            V value = operation.execute();
+            entry.result.complete(value);
+            return value;
+        } catch (Exception e) {
+            entries.remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets the oldest keys while too many are queued or the oldest has expired, and drops queued keys
+     * whose operation failed or was replaced as soon as they are the oldest.
+     */
+    private void evict(long now) {
+        Keyed<K, V> oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (queued.get() > maxEntries || oldest.entry.expiresAt - now <= 0 || entries.get(oldest.key) != oldest.entry)) {
+            if (insertionOrder.remove(oldest)) {
+                queued.decrementAndGet();
+                entries.remove(oldest.key, oldest.entry);
+            }
+        }
+    }
+
+    int queued() {
+        return queued.get();
+    }
+
+    private static class Entry<V> {
+        final long expiresAt;
+        final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        <E extends Exception> V await() throws E {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw (E) e.getCause();
+            }
+        }
+    }
+
+    private static class Keyed<K, V> {
+        final K key;
+        final Entry<V> entry;
+
+        Keyed(K key, Entry<V> entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
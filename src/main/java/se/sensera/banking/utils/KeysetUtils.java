@@ -0,0 +1,79 @@
+package se.sensera.banking.utils;
+
+import se.sensera.banking.OrderedIndex;
+import se.sensera.banking.Page;
+import se.sensera.banking.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keyset pagination: entities are ordered by a sort key and then by id, and a page continues right after
+ * the (sort key, id) of the last entity of the previous page, carried in an opaque cursor.
+ */
+public interface KeysetUtils {
+
+    Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    static int compare(String key, String id, String otherKey, String otherId) {
+        int order = KEY_ORDER.compare(key, otherKey);
+        return order != 0 ? order : id.compareTo(otherId);
+    }
+
+    /**
+     * Returns the page following {@code cursor}, or the first page when it is null. The ordered index is
+     * walked from the cursor position when present, otherwise all entities are filtered and the page is
+     * selected with a bounded heap.
+     */
+    static <E extends Repository.Entity<String>> Page<E> applyKeysetPage(Optional<OrderedIndex<E>> index, Supplier<Stream<E>> all,
+                                                                         Function<E, String> sortKeyOf, String cursor, int pageSize) {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive but was " + pageSize);
+        String[] position = cursor == null ? new String[2] : decodeCursor(cursor);
+        String key = position[0];
+        String id = position[1];
+
+        Stream<E> ordered = index
+                .map(orderedIndex -> orderedIndex.after(key, id))
+                .orElseGet(() -> ListUtils.applySortedPage(
+                        all.get().filter(entity -> id == null || compare(sortKeyOf.apply(entity), entity.getId(), key, id) > 0),
+                        (first, second) -> compare(sortKeyOf.apply(first), first.getId(), sortKeyOf.apply(second), second.getId()),
+                        0, pageSize + 1));
+        List<E> entities;
+        try (ordered) {
+            entities = ordered.limit(pageSize + 1L).collect(Collectors.toList());
+        }
+        if (entities.size() <= pageSize)
+            return new Page<>(entities, null);
+
+        entities = new ArrayList<>(entities.subList(0, pageSize));
+        E last = entities.get(pageSize - 1);
+        return new Page<>(entities, encodeCursor(sortKeyOf.apply(last), last.getId()));
+    }
+
+    static String encodeCursor(String key, String id) {
+        String position = (key == null ? "-" : key.length() + ":" + key) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String[] decodeCursor(String cursor) {
+        String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (position.startsWith("-"))
+            return new String[]{null, position.substring(1)};
+        int separator = position.indexOf(':');
+        if (separator < 0)
+            throw new IllegalArgumentException("Invalid cursor '" + cursor + "'");
+        int keyEnd = separator + 1 + Integer.parseInt(position.substring(0, separator));
+        if (keyEnd > position.length())
+            throw new IllegalArgumentException("Invalid cursor '" + cursor + "'");
+        return new String[]{position.substring(separator + 1, keyEnd), position.substring(keyEnd)};
+    }
+}
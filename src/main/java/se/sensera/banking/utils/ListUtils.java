@@ -1,36 +1,65 @@
 package se.sensera.banking.utils;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import se.sensera.banking.OrderedIndex;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ListUtils {
 
+    /**
+     * Pages beyond this many leading elements are found by a full sort instead of a bounded heap.
+     */
+    int MAX_TOP_K = 10_000;
+
+    /**
+     * Returns one page of the stream without collecting it. With a page size, page {@code pageNumber}
+     * holds the elements from offset {@code pageNumber * pageSize}, at most {@code pageSize} of them.
+     * Without a page size, the page number is the offset and the rest of the stream is returned.
+     * The source is pulled lazily and no further than the end of the page.
+     */
     static <E> Stream<E> applyPage(Stream<E> stream, Integer pageNumber, Integer pageSize) {
-        if (pageNumber != null) {
-            List<E> intermediateList = stream.collect(Collectors.toList());
-            if (pageSize == null)
-                try {
-                    return intermediateList
-                            .subList(pageNumber, intermediateList.size())
-                            .stream();
-                } catch (Exception e) {
-                    return Stream.empty();
-                }
-            else
-                try {
-                    int fromIndex = pageNumber * pageSize;
-                    int toIndex = pageNumber > 0 ? pageNumber * (pageSize + 1) : pageSize;
-                    if (toIndex > intermediateList.size())
-                        toIndex = intermediateList.size();
-                    return intermediateList
-                            .subList(fromIndex, toIndex)
-                            .stream();
-                } catch (Exception e) {
-                    return Stream.empty();
-                }
-        } else if (pageSize != null)
-            return stream.limit(pageSize);
-        return stream;
+        if (pageNumber == null && pageSize == null)
+            return stream;
+        if ((pageNumber != null && pageNumber < 0) || (pageSize != null && pageSize < 0))
+            return Stream.<E>empty().onClose(stream::close);
+        long offset = pageNumber == null ? 0 : pageSize == null ? pageNumber : (long) pageNumber * pageSize;
+        long limit = pageSize == null ? Long.MAX_VALUE : pageSize;
+        return StreamSupport.stream(new PageSpliterator<>(stream.spliterator(), offset, limit), false)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Sorts the stream and returns one page of it, with the same page semantics as {@link #applyPage}.
+     * When the page ends within the first {@link #MAX_TOP_K} elements, only the leading
+     * {@code (pageNumber + 1) * pageSize} elements are kept, in a bounded heap, instead of sorting everything.
+     * Equal elements keep their encounter order, as with {@link Stream#sorted}.
+     */
+    static <E> Stream<E> applySortedPage(Stream<E> stream, Comparator<? super E> comparator, Integer pageNumber, Integer pageSize) {
+        if (pageSize == null || pageSize < 0 || (pageNumber != null && pageNumber < 0))
+            return applyPage(stream.sorted(comparator), pageNumber, pageSize);
+        long offset = pageNumber == null ? 0 : (long) pageNumber * pageSize;
+        if (offset + pageSize > MAX_TOP_K)
+            return applyPage(stream.sorted(comparator), pageNumber, pageSize);
+        try (stream) {
+            return TopK.of(stream, comparator, (int) (offset + pageSize))
+                    .stream()
+                    .skip(offset);
+        }
+    }
+
+    /**
+     * Sorted page of the entities matching {@code filter}. With an ordered index the page is read by walking
+     * the index, which is already in order, otherwise all entities are sorted as in {@link #applySortedPage}.
+     */
+    static <E> Stream<E> applySortedPage(Optional<OrderedIndex<E>> index, Supplier<Stream<E>> all, Predicate<? super E> filter,
+                                         Comparator<? super E> comparator, Integer pageNumber, Integer pageSize) {
+        return index
+                .map(orderedIndex -> applyPage(orderedIndex.after(null, null).filter(filter), pageNumber, pageSize))
+                .orElseGet(() -> applySortedPage(all.get().filter(filter), comparator, pageNumber, pageSize));
     }
 }
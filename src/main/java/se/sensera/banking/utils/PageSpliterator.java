@@ -0,0 +1,51 @@
+package se.sensera.banking.utils;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Skips {@code offset} elements of the source and then yields at most {@code limit} elements, pulling one
+ * source element at a time. It never splits, so a page never buffers more than the element at hand.
+ */
+class PageSpliterator<E> implements Spliterator<E> {
+    private final Spliterator<E> source;
+    private long toSkip;
+    private long remaining;
+
+    PageSpliterator(Spliterator<E> source, long offset, long limit) {
+        this.source = source;
+        this.toSkip = offset;
+        this.remaining = limit;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        while (toSkip > 0) {
+            if (!source.tryAdvance(element -> {}))
+                return false;
+            toSkip--;
+        }
+        if (remaining == 0 || !source.tryAdvance(action))
+            return false;
+        remaining--;
+        return true;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = source.estimateSize();
+        if (size == Long.MAX_VALUE)
+            return remaining;
+        return Math.min(remaining, Math.max(0, size - toSkip));
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & ~(SIZED | SUBSIZED);
+    }
+}
@@ -0,0 +1,51 @@
+package se.sensera.banking.utils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * A fixed set of locks where each key is mapped to one stripe by its hash.
+ * Keys that share a stripe are serialized, all other keys proceed in parallel.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLocks(int minimumStripes) {
+        int stripes = 1;
+        while (stripes < minimumStripes)
+            stripes <<= 1;
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++)
+            locks[i] = new ReentrantLock();
+        mask = stripes - 1;
+    }
+
+    public ReentrantLock lockFor(Object key) {
+        return locks[indexOf(key)];
+    }
+
+    /**
+     * The stripes of all the keys, each once and in stripe order. Threads that take several stripes in this
+     * order cannot deadlock with each other.
+     */
+    public List<ReentrantLock> locksFor(Collection<?> keys) {
+        return keys.stream()
+                .mapToInt(this::indexOf)
+                .distinct()
+                .sorted()
+                .mapToObj(index -> locks[index])
+                .collect(Collectors.toList());
+    }
+
+    public int indexOf(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public int size() {
+        return locks.length;
+    }
+}
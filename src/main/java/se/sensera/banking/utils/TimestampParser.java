@@ -0,0 +1,117 @@
+package se.sensera.banking.utils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser of the fixed {@code yyyy-MM-dd HH:mm} timestamps taken by the services, giving minutes since the
+ * epoch. The digits are read in place without building any date objects, and the most recently parsed
+ * timestamps are cached, since batch jobs tend to pass the same timestamp thousands of times. Instances
+ * are thread safe.
+ */
+public class TimestampParser {
+    private static final int CACHE_SIZE = 64;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final ZoneRules rules;
+    private final boolean fixedOffset;
+    private final int fixedOffsetMinutes;
+    private final Parsed[] cache = new Parsed[CACHE_SIZE];
+
+    public TimestampParser(ZoneId zone) {
+        this.rules = zone.getRules();
+        this.fixedOffset = rules.isFixedOffset();
+        this.fixedOffsetMinutes = fixedOffset ? rules.getOffset(Instant.EPOCH).getTotalSeconds() / 60 : 0;
+    }
+
+    public long parseEpochMinute(String timestamp) {
+        int slot = timestamp.hashCode() & (CACHE_SIZE - 1);
+        Parsed parsed = cache[slot];
+        if (parsed != null && parsed.timestamp.equals(timestamp))
+            return parsed.epochMinute;
+        long epochMinute = parse(timestamp);
+        cache[slot] = new Parsed(timestamp, epochMinute);
+        return epochMinute;
+    }
+
+    /**
+     * The first whole minute at or after {@code epochMillis}, so that a time is at or before a parsed
+     * timestamp exactly when its epoch minute is.
+     */
+    public static long epochMinuteAtOrAfter(long epochMillis) {
+        return Math.floorDiv(epochMillis + TimeUnit.MINUTES.toMillis(1) - 1, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    public static long toEpochMillis(long epochMinute) {
+        return TimeUnit.MINUTES.toMillis(epochMinute);
+    }
+
+    private long parse(String timestamp) {
+        if (timestamp.length() != 16 || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-'
+                || timestamp.charAt(10) != ' ' || timestamp.charAt(13) != ':')
+            throw cannotParse(timestamp);
+        int year = digits(timestamp, 0, 4);
+        int month = digits(timestamp, 5, 2);
+        int day = digits(timestamp, 8, 2);
+        int hour = digits(timestamp, 11, 2);
+        int minute = digits(timestamp, 14, 2);
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23 || minute > 59)
+            throw cannotParse(timestamp);
+
+        long localMinute = epochDay(year, month, day) * MINUTES_PER_DAY + hour * 60 + minute;
+        if (fixedOffset)
+            return localMinute - fixedOffsetMinutes;
+        // Resolved like LocalDateTime.atZone: a time in a gap is moved forward, an ambiguous time takes the earlier offset
+        return localMinute - rules.getOffset(LocalDateTime.of(year, month, day, hour, minute)).getTotalSeconds() / 60;
+    }
+
+    private static int digits(String timestamp, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = timestamp.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw cannotParse(timestamp);
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2)
+            return isLeap(year) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    private static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static IllegalArgumentException cannotParse(String timestamp) {
+        return new IllegalArgumentException("Cannot parse date '" + timestamp + "'");
+    }
+
+    private static class Parsed {
+        final String timestamp;
+        final long epochMinute;
+
+        Parsed(String timestamp, long epochMinute) {
+            this.timestamp = timestamp;
+            this.epochMinute = epochMinute;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package se.sensera.banking.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Selects the {@code k} smallest elements of a stream in O(n log k) time and O(k) memory.
+ */
+class TopK {
+
+    static <E> List<E> of(Stream<E> stream, Comparator<? super E> comparator, int k) {
+        List<E> result = new ArrayList<>(k);
+        if (k == 0)
+            return result;
+        Comparator<Ranked<E>> order = Comparator.<Ranked<E>, E>comparing(ranked -> ranked.element, comparator)
+                .thenComparingLong(ranked -> ranked.sequence);
+        PriorityQueue<Ranked<E>> largestOnTop = new PriorityQueue<>(k, order.reversed());
+        long[] sequence = {0};
+        stream.sequential().forEach(element -> {
+            Ranked<E> ranked = new Ranked<>(element, sequence[0]++);
+            if (largestOnTop.size() < k)
+                largestOnTop.add(ranked);
+            else if (order.compare(ranked, largestOnTop.peek()) < 0) {
+                largestOnTop.poll();
+                largestOnTop.add(ranked);
+            }
+        });
+        largestOnTop.stream()
+                .sorted(order)
+                .forEach(ranked -> result.add(ranked.element));
+        return result;
+    }
+
+    private static class Ranked<E> {
+        final E element;
+        final long sequence;
+
+        Ranked(E element, long sequence) {
+            this.element = element;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.UserImpl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AccountServiceFindAfterTest {
+
+    private static final User OWNER = new UserImpl("owner", "Arne", "pid Arne", true);
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void walk_all_accounts_by_name_success(AccountsRepository accountsRepository) throws UseException {
+        // Given
+        AccountService accountService = new AccountServiceImpl(new InMemoryUsersRepository(), accountsRepository);
+        List<Account> accounts = saveAccounts(accountsRepository, 25);
+
+        // When
+        List<Account> walked = walk(accountService, 4, AccountService.SortOrder.AccountName);
+
+        // Then
+        assertThat(walked, contains(sorted(accounts, Account::getName)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void walk_all_accounts_unsorted_success(AccountsRepository accountsRepository) throws UseException {
+        // Given
+        AccountService accountService = new AccountServiceImpl(new InMemoryUsersRepository(), accountsRepository);
+        List<Account> accounts = saveAccounts(accountsRepository, 25);
+
+        // When
+        List<Account> walked = walk(accountService, 4, AccountService.SortOrder.None);
+
+        // Then
+        assertThat(walked, contains(sorted(accounts, Account::getId)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void continue_after_concurrent_insert_success(AccountsRepository accountsRepository) throws UseException {
+        // Given
+        AccountService accountService = new AccountServiceImpl(new InMemoryUsersRepository(), accountsRepository);
+        Stream.of("Arne", "Beda", "Lisa", "Per").forEach(name -> accountsRepository.save(new AccountImpl(OWNER, name, "id " + name, true)));
+
+        // When
+        Page<Account> first = accountService.findAccountsAfter(null, 2, AccountService.SortOrder.AccountName);
+        accountsRepository.save(new AccountImpl(OWNER, "Adam", "id Adam", true));
+        Page<Account> second = accountService.findAccountsAfter(first.getNext(), 2, AccountService.SortOrder.AccountName);
+
+        // Then
+        assertThat(names(first), contains("Arne", "Beda"));
+        assertThat(names(second), contains("Lisa", "Per"));
+        assertThat(second.hasNext(), is(false));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void continue_after_concurrent_rename_success(AccountsRepository accountsRepository) throws UseException {
+        // Given
+        AccountService accountService = new AccountServiceImpl(new InMemoryUsersRepository(), accountsRepository);
+        List<Account> accounts = Stream.of("Arne", "Beda", "Lisa", "Per")
+                .map(name -> accountsRepository.save(new AccountImpl(OWNER, name, "id " + name, true)))
+                .collect(Collectors.toList());
+
+        // When
+        Page<Account> first = accountService.findAccountsAfter(null, 2, AccountService.SortOrder.AccountName);
+        List<String> firstNames = names(first);
+        AccountImpl beda = (AccountImpl) accounts.get(1);
+        beda.setName("Ylva");
+        accountsRepository.save(beda);
+        AccountImpl per = (AccountImpl) accounts.get(3);
+        per.setName("Aaron");
+        accountsRepository.save(per);
+        Page<Account> second = accountService.findAccountsAfter(first.getNext(), 2, AccountService.SortOrder.AccountName);
+
+        // Then
+        assertThat(firstNames, contains("Arne", "Beda"));
+        assertThat(names(second), contains("Lisa", "Ylva"));
+        assertThat(second.hasNext(), is(false));
+    }
+
+    private static List<Account> saveAccounts(AccountsRepository accountsRepository, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(n -> accountsRepository.save(new AccountImpl(OWNER, "Account " + (200 - n), "id " + (100 + n * 7 % count), true)))
+                .collect(Collectors.toList());
+    }
+
+    private static Account[] sorted(List<Account> accounts, Function<Account, String> sortKeyOf) {
+        return accounts.stream()
+                .sorted(Comparator.comparing(sortKeyOf).thenComparing(Account::getId))
+                .toArray(Account[]::new);
+    }
+
+    private static List<Account> walk(AccountService accountService, int pageSize, AccountService.SortOrder sortOrder) throws UseException {
+        List<Account> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<Account> page = accountService.findAccountsAfter(cursor, pageSize, sortOrder);
+            assertThat(page.getEntities().size(), is(lessThanOrEqualTo(pageSize)));
+            walked.addAll(page.getEntities());
+            cursor = page.getNext();
+        } while (cursor != null);
+        return walked;
+    }
+
+    private static List<String> names(Page<Account> page) {
+        return page.getEntities().stream().map(Account::getName).collect(Collectors.toList());
+    }
+
+    private static Stream<Arguments> provideRepositories() {
+        return Stream.of(
+                Arguments.of(new InMemoryAccountsRepository()),
+                Arguments.of(new UnindexedAccountsRepository())
+        );
+    }
+
+    private static class UnindexedAccountsRepository implements AccountsRepository {
+        private final AccountsRepository repository = new InMemoryAccountsRepository();
+
+        @Override
+        public Optional<Account> getEntityById(String id) {
+            return repository.getEntityById(id);
+        }
+
+        @Override
+        public Stream<Account> all() {
+            return repository.all();
+        }
+
+        @Override
+        public Account save(Account entity) {
+            return repository.save(entity);
+        }
+
+        @Override
+        public Account delete(Account entity) {
+            return repository.delete(entity);
+        }
+    }
+}
@@ -6,9 +6,13 @@ import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
 import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.UserImpl;
 
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -345,4 +349,29 @@ public class AccountServiceTest {
         assertThat(userException.getUserExceptionType(), is(UseExceptionType.NOT_ACTIVE));
         assertThat(userException.getActivity(), is(Activity.INACTIVATE_ACCOUNT));
     }
+
+    @Test
+    void failed_save_releases_account_name_success() throws UseException {
+        // Given
+        AtomicBoolean failing = new AtomicBoolean(true);
+        InMemoryAccountsRepository accountsRepository = new InMemoryAccountsRepository() {
+            @Override
+            public Account save(Account account) {
+                if (failing.get())
+                    throw new IllegalStateException("Storage failure");
+                return super.save(account);
+            }
+        };
+        InMemoryUsersRepository usersRepository = new InMemoryUsersRepository();
+        User arne = usersRepository.save(new UserImpl("1", "Arne", "20011010-1234", true));
+        AccountService accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+
+        // When
+        assertThrows(IllegalStateException.class, () -> accountService.createAccount(arne.getId(), "default"));
+        failing.set(false);
+
+        // Then
+        assertThat(accountsRepository.accountNameIndex().orElseThrow().contains("default"), is(false));
+        assertThat(accountService.createAccount(arne.getId(), "default").getName(), is("default"));
+    }
 }
@@ -0,0 +1,97 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AccountServiceUsersIndexTest {
+
+    AccountService accountService;
+
+    User arne;
+    User lisa;
+    User beda;
+    Account arnesAccount;
+    Account lisasAccount;
+
+    @BeforeEach
+    void setUp() throws UseException {
+        UsersRepository usersRepository = new InMemoryUsersRepository();
+        UserService userService = new UserServiceImpl(usersRepository);
+        accountService = new AccountServiceImpl(usersRepository, new InMemoryAccountsRepository());
+
+        arne = userService.createUser("Arne", "9384538975");
+        lisa = userService.createUser("Lisa", "9384538976");
+        beda = userService.createUser("Beda", "9384538977");
+        arnesAccount = accountService.createAccount(arne.getId(), "default a");
+        lisasAccount = accountService.createAccount(lisa.getId(), "default b");
+    }
+
+    @Test
+    void find_accounts_of_owner_success() throws UseException {
+        assertThat(accountService.findAccounts("", arne.getId(), null, null, AccountService.SortOrder.None).collect(Collectors.toList()),
+                contains(arnesAccount));
+        assertThat(accountService.findAccounts("", beda.getId(), null, null, AccountService.SortOrder.None).collect(Collectors.toList()),
+                is(empty()));
+    }
+
+    @Test
+    void find_accounts_follows_added_and_removed_users_success() throws UseException {
+        // When
+        accountService.addUserToAccount(lisa.getId(), lisasAccount.getId(), arne.getId());
+
+        // Then
+        assertThat(accountService.findAccounts("", arne.getId(), null, null, AccountService.SortOrder.AccountName).collect(Collectors.toList()),
+                contains(arnesAccount, lisasAccount));
+
+        // When
+        accountService.removeUserFromAccount(lisa.getId(), lisasAccount.getId(), arne.getId());
+
+        // Then
+        assertThat(accountService.findAccounts("", arne.getId(), null, null, AccountService.SortOrder.None).collect(Collectors.toList()),
+                contains(arnesAccount));
+        assertThat(accountService.findAccounts("", lisa.getId(), null, null, AccountService.SortOrder.None).collect(Collectors.toList()),
+                contains(lisasAccount));
+    }
+
+    @Test
+    void find_accounts_sorted_by_name_after_rename_success() throws UseException {
+        // Given
+        Account bedasAccount = accountService.createAccount(beda.getId(), "default c");
+
+        // When
+        accountService.changeAccount(arne.getId(), arnesAccount.getId(), changeAccount -> {
+            try {
+                changeAccount.setName("extra a");
+            } catch (UseException e) {
+                throw new RuntimeException("Name change failed", e);
+            }
+        });
+
+        // Then
+        assertThat(accountService.findAccounts("", null, null, null, AccountService.SortOrder.AccountName).collect(Collectors.toList()),
+                contains(lisasAccount, bedasAccount, arnesAccount));
+        assertThat(accountService.findAccounts("default", null, 1, 1, AccountService.SortOrder.AccountName).collect(Collectors.toList()),
+                contains(bedasAccount));
+    }
+
+    @Test
+    void create_second_account_of_user_success() throws UseException {
+        // When
+        Account otherAccount = accountService.createAccount(arne.getId(), "savings");
+
+        // Then
+        assertThat(otherAccount.getId(), is(not(arnesAccount.getId())));
+        assertThat(accountService.findAccounts("", arne.getId(), null, null, AccountService.SortOrder.AccountName).collect(Collectors.toList()),
+                contains(arnesAccount, otherAccount));
+    }
+}
@@ -0,0 +1,84 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.FsyncPolicy;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.StateLog;
+import se.sensera.banking.impl.UserImpl;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Time to replay the state log of many users and accounts into empty repositories, run with
+ * {@code mvn test -Dbenchmark=true}, first from the log alone and then from a snapshot of it. Prints the
+ * replay rate and what it comes to for 10M users and 20M accounts.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class StateLogRecoveryBenchmarkTest {
+
+    static final int USERS = 50_000;
+    static final int ACCOUNTS_PER_USER = 2;
+    static final int CHANGES_PER_USER = 3;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_users_and_accounts() {
+        try (StateLog stateLog = new StateLog(directory, FsyncPolicy.NONE, Duration.ZERO)) {
+            UsersRepository usersRepository = new InMemoryUsersRepository(stateLog);
+            AccountsRepository accountsRepository = new InMemoryAccountsRepository(stateLog);
+            stateLog.replay(usersRepository, accountsRepository);
+            for (int n = 0; n < USERS; n++) {
+                User user = usersRepository.save(new UserImpl("user-" + n, "User Number " + n, String.format("%012d", n), true));
+                for (int a = 0; a < ACCOUNTS_PER_USER; a++)
+                    accountsRepository.save(new AccountImpl(user, "account " + n + "-" + a, "account-" + n + "-" + a, true));
+                for (int change = 0; change < CHANGES_PER_USER; change++) {
+                    user.setName("User Number " + n + " v" + change);
+                    usersRepository.save(user);
+                }
+            }
+        }
+
+        long replayed = reopen("log", false);
+        assertThat(replayed, is((long) USERS * (1 + ACCOUNTS_PER_USER + CHANGES_PER_USER)));
+        long loaded = reopen("snapshot", true);
+        assertThat(loaded, is((long) USERS * (1 + ACCOUNTS_PER_USER)));
+    }
+
+    /**
+     * Replays the log into empty repositories and prints how long it took, optionally after taking a snapshot.
+     */
+    private long reopen(String from, boolean snapshotBefore) {
+        if (snapshotBefore)
+            try (StateLog stateLog = new StateLog(directory, FsyncPolicy.NONE, Duration.ZERO)) {
+                UsersRepository usersRepository = new InMemoryUsersRepository(stateLog);
+                AccountsRepository accountsRepository = new InMemoryAccountsRepository(stateLog);
+                stateLog.replay(usersRepository, accountsRepository);
+                stateLog.snapshot(usersRepository, accountsRepository);
+            }
+
+        long begin = System.nanoTime();
+        long replayed;
+        try (StateLog stateLog = new StateLog(directory, FsyncPolicy.NONE, Duration.ZERO)) {
+            UsersRepository usersRepository = new InMemoryUsersRepository(stateLog);
+            AccountsRepository accountsRepository = new InMemoryAccountsRepository(stateLog);
+            replayed = stateLog.replay(usersRepository, accountsRepository);
+            assertThat(accountsRepository.all().count(), is((long) USERS * ACCOUNTS_PER_USER));
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        double perSecond = replayed * 1_000_000_000D / elapsed;
+        System.out.printf("from=%-8s entries=%,d seconds=%,.2f entries/s=%,12.0f seconds for 10M users and 20M accounts=%,.1f%n",
+                from, replayed, elapsed / 1_000_000_000D, perSecond, 30_000_000 / perSecond);
+        return replayed;
+    }
+}
@@ -0,0 +1,32 @@
+package se.sensera.banking;
+
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.UserImpl;
+
+import java.util.UUID;
+
+/**
+ * Users and accounts with random ids saved to a repository, for tests that need an account and its owner but
+ * not any particular one.
+ */
+public final class TestEntities {
+
+    private TestEntities() {
+    }
+
+    public static User saveUser(UsersRepository usersRepository) {
+        return saveUser(usersRepository, "Arne Arnesson", "9283749238472");
+    }
+
+    public static User saveUser(UsersRepository usersRepository, String name, String personalIdentificationNumber) {
+        return usersRepository.save(new UserImpl(UUID.randomUUID().toString(), name, personalIdentificationNumber, true));
+    }
+
+    public static Account saveAccount(AccountsRepository accountsRepository, User owner, String name) {
+        return saveAccount(accountsRepository, owner, name, true);
+    }
+
+    public static Account saveAccount(AccountsRepository accountsRepository, User owner, String name, boolean active) {
+        return accountsRepository.save(new AccountImpl(owner, name, UUID.randomUUID().toString(), active));
+    }
+}
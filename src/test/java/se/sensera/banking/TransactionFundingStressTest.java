@@ -0,0 +1,109 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+/**
+ * Races many writers depositing and withdrawing on the same account, while a reader keeps checking that
+ * the committed balance never goes negative.
+ */
+public class TransactionFundingStressTest {
+    static final int WRITERS = 64;
+    static final int TRANSACTIONS_PER_WRITER = 300;
+    static final String CREATED = "2020-01-01 10:34";
+
+    TransactionServiceImpl transactionService;
+    TransactionsRepository transactionsRepository;
+    User user;
+    Account account;
+
+    @BeforeEach
+    void setUp() {
+        UsersRepository usersRepository = new InMemoryUsersRepository();
+        AccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        transactionsRepository = new InMemoryTransactionsRepository();
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+    }
+
+    @Test
+    void concurrent_writers_never_overdraw() throws Exception {
+        // Given
+        AtomicLong acceptedCents = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong lowestBalance = new AtomicLong(Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        try {
+            Future<?> reader = executor.submit(() -> {
+                start.await();
+                while (writing.get())
+                    lowestBalance.accumulateAndGet(transactionService.sumInCents(CREATED, user.getId(), account.getId()), Math::min);
+                return null;
+            });
+            List<Future<?>> writers = IntStream.range(0, WRITERS)
+                    .mapToObj(writer -> executor.submit(() -> {
+                        Random random = new Random(writer);
+                        start.await();
+                        for (int i = 0; i < TRANSACTIONS_PER_WRITER; i++) {
+                            // Withdrawals are more likely and larger, so the balance keeps hitting zero
+                            long cents = random.nextInt(3) == 0 ? random.nextInt(10_000) : -random.nextInt(12_000) - 1;
+                            try {
+                                transactionService.createTransaction(CREATED, user.getId(), account.getId(), cents / 100D);
+                                acceptedCents.addAndGet(cents);
+                            } catch (UseException e) {
+                                assertThat(e.getUserExceptionType(), is(UseExceptionType.NOT_FUNDED));
+                                refused.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }))
+                    .collect(Collectors.toList());
+            start.countDown();
+            for (Future<?> writer : writers)
+                writer.get();
+            writing.set(false);
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        long balance = transactionService.sumInCents(CREATED, user.getId(), account.getId());
+        assertThat(lowestBalance.get(), is(greaterThanOrEqualTo(0L)));
+        assertThat(balance, is(greaterThanOrEqualTo(0L)));
+        assertThat(balance, is(acceptedCents.get()));
+        assertThat(refused.get(), is(greaterThan(0L)));
+        assertThat(transactionsRepository.all().count(), is(WRITERS * TRANSACTIONS_PER_WRITER - refused.get()));
+
+        transactionService.setLedgerVerification(true);
+        assertThat(transactionService.sumInCents(CREATED, user.getId(), account.getId()), is(balance));
+    }
+}
@@ -0,0 +1,84 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.impl.FsyncPolicy;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.JournalTransactionsRepository;
+import se.sensera.banking.impl.TransactionImpl;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+/**
+ * Sustained appends per second to the transaction journal with each fsync policy, run with
+ * {@code mvn test -Dbenchmark=true}. With fsync on commit the writers share syncs, so the rate should grow
+ * with the number of writers rather than stay at one sync per append.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class TransactionJournalBenchmarkTest {
+
+    static final int APPENDS_PER_THREAD = 20_000;
+    static final int[] THREADS = {1, 8, 32};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sustained_appends() throws Exception {
+        UsersRepository usersRepository = new InMemoryUsersRepository();
+        AccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        User user = saveUser(usersRepository);
+        Account account = saveAccount(accountsRepository, user, "default");
+
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            for (int threads : THREADS) {
+                Path journal = directory.resolve(policy + "-" + threads);
+                long elapsed;
+                try (JournalTransactionsRepository repository = new JournalTransactionsRepository(journal, usersRepository,
+                        accountsRepository, policy, Duration.ofMillis(10))) {
+                    ExecutorService executor = Executors.newFixedThreadPool(threads);
+                    try {
+                        CountDownLatch start = new CountDownLatch(1);
+                        Future<?>[] futures = IntStream.range(0, threads)
+                                .mapToObj(thread -> executor.submit(() -> {
+                                    start.await();
+                                    for (int i = 0; i < APPENDS_PER_THREAD; i++)
+                                        repository.save(new TransactionImpl(thread + "-" + i, new Date(), user, account, 1.25));
+                                    return null;
+                                }))
+                                .toArray(Future[]::new);
+
+                        long begin = System.nanoTime();
+                        start.countDown();
+                        for (Future<?> future : futures)
+                            future.get();
+                        elapsed = System.nanoTime() - begin;
+                    } finally {
+                        executor.shutdownNow();
+                    }
+                }
+
+                System.out.printf("fsync=%-9s threads=%2d appends/s=%,12.0f%n", policy, threads,
+                        threads * (double) APPENDS_PER_THREAD * 1_000_000_000L / elapsed);
+
+                try (JournalTransactionsRepository repository = new JournalTransactionsRepository(journal, usersRepository, accountsRepository)) {
+                    assertThat(repository.all().count(), is((long) threads * APPENDS_PER_THREAD));
+                }
+            }
+        }
+    }
+}
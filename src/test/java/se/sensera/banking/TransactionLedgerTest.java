@@ -0,0 +1,131 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.CriticalError;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+public class TransactionLedgerTest {
+
+    TransactionServiceImpl transactionService;
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    TransactionsRepository transactionsRepository;
+    User user;
+    Account account;
+    Account otherAccount;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+        transactionsRepository = new InMemoryTransactionsRepository();
+
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.setLedgerVerification(true);
+
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+        otherAccount = saveAccount(accountsRepository, user, "other");
+    }
+
+    @Test
+    void ledger_sum_matches_transactions() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionService.createTransaction("2020-01-01 10:36", user.getId(), otherAccount.getId(), 50);
+        transactionService.createTransaction("2020-01-01 10:38", user.getId(), account.getId(), -75);
+
+        // When
+        double sum = transactionService.sum("2020-01-01 10:45", user.getId(), account.getId());
+        double otherSum = transactionService.sum("2020-01-01 10:45", user.getId(), otherAccount.getId());
+        double earlierSum = transactionService.sum("2020-01-01 10:35", user.getId(), account.getId());
+
+        // Then
+        assertThat(sum, is(125D));
+        assertThat(otherSum, is(50D));
+        assertThat(earlierSum, is(200D));
+    }
+
+    @Test
+    void ledger_sum_at_time_includes_late_transactions() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-01 10:40", user.getId(), account.getId(), 400);
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionService.createTransaction("2020-01-01 10:40", user.getId(), account.getId(), -100);
+        transactionService.createTransaction("2020-01-01 10:37", user.getId(), account.getId(), 50);
+
+        // Then
+        assertThat(transactionService.sum("2020-01-01 10:33", user.getId(), account.getId()), is(0D));
+        assertThat(transactionService.sum("2020-01-01 10:34", user.getId(), account.getId()), is(200D));
+        assertThat(transactionService.sum("2020-01-01 10:39", user.getId(), account.getId()), is(250D));
+        assertThat(transactionService.sum("2020-01-01 10:40", user.getId(), account.getId()), is(550D));
+        assertThat(transactionService.sum("2021-01-01 00:00", user.getId(), account.getId()), is(550D));
+    }
+
+    @Test
+    void ledger_rejects_withdrawal_exceeding_balance() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionService.createTransaction("2020-01-01 10:35", user.getId(), otherAccount.getId(), 500);
+
+        // When
+        UseException userException = assertThrows(UseException.class, () -> {
+            transactionService.createTransaction("2020-01-01 10:36", user.getId(), account.getId(), -201);
+        });
+
+        // Then
+        assertThat(userException.getUserExceptionType(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(userException.getActivity(), is(Activity.CREATE_TRANSACTION));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(200D));
+    }
+
+    @Test
+    void ledger_verification_detects_transactions_bypassing_service() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionsRepository.save(new TransactionImpl(UUID.randomUUID().toString(), new Date(), user, account, 100));
+
+        // Then
+        assertThrows(CriticalError.class, () -> {
+            transactionService.createTransaction("2020-01-01 10:36", user.getId(), account.getId(), -50);
+        });
+    }
+
+    @Test
+    void ledger_sums_cents_exactly() throws UseException {
+        // Given
+        List<TransactionRequest> requests = IntStream.range(0, 1000)
+                .mapToObj(n -> new TransactionRequest("2020-01-01 10:34", user.getId(), account.getId(), 0.1))
+                .collect(Collectors.toList());
+        transactionService.createTransactions(requests);
+        transactionService.createTransaction("2020-01-01 10:35", user.getId(), account.getId(), -99.99);
+
+        // Then
+        assertThat(transactionService.sumInCents("2020-01-01 10:34", user.getId(), account.getId()), is(10_000L));
+        assertThat(transactionService.sum("2020-01-01 10:34", user.getId(), account.getId()), is(100D));
+        assertThat(transactionService.sumInCents("2020-01-01 10:35", user.getId(), account.getId()), is(1L));
+        assertThat(transactionService.sum("2020-01-01 10:35", user.getId(), account.getId()), is(0.01));
+        assertThrows(UseException.class, () -> transactionService.createTransaction("2020-01-01 10:36", user.getId(), account.getId(), -0.02));
+    }
+}
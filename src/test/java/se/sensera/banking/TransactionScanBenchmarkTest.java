@@ -0,0 +1,100 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.ColumnarTransactionsRepository;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.UserImpl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+/**
+ * Time of a period sum over all accounts of a user, scanning the columns of a
+ * {@link ColumnarTransactionsRepository} compared to filtering a stream of the transactions, run with
+ * {@code mvn test -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class TransactionScanBenchmarkTest {
+
+    static final int TRANSACTIONS = 2_000_000;
+    static final int USERS = 100;
+    static final int ACCOUNTS_PER_USER = 10;
+    static final int MINUTES = 1_000_000;
+    static final int WARMUP_QUERIES = 10;
+    static final int QUERIES = 30;
+
+    @Test
+    void period_sum_of_user() {
+        Random random = new Random(1);
+        List<User> users = IntStream.range(0, USERS)
+                .mapToObj(n -> (User) new UserImpl("user-" + n, "User " + n, String.valueOf(n), true))
+                .collect(Collectors.toList());
+        List<Account> accounts = IntStream.range(0, USERS * ACCOUNTS_PER_USER)
+                .mapToObj(n -> (Account) new AccountImpl(users.get(n / ACCOUNTS_PER_USER), "account " + n, "account-" + n, true))
+                .collect(Collectors.toList());
+        ColumnarTransactionsRepository repository = new ColumnarTransactionsRepository();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            Account account = accounts.get(random.nextInt(accounts.size()));
+            repository.save(new TransactionImpl("t" + i, new Date(random.nextInt(MINUTES) * 60_000L), account.getOwner(), account,
+                    (random.nextInt(20_001) - 10_000) / 100D));
+        }
+
+        Query[] queries = IntStream.range(0, WARMUP_QUERIES + QUERIES)
+                .mapToObj(n -> {
+                    int user = random.nextInt(USERS);
+                    Set<String> accountIds = accounts.subList(user * ACCOUNTS_PER_USER, (user + 1) * ACCOUNTS_PER_USER).stream()
+                            .map(Account::getId)
+                            .collect(Collectors.toSet());
+                    long from = random.nextInt(MINUTES) * 60_000L;
+                    return new Query(accountIds, from, from + random.nextInt(MINUTES / 2) * 60_000L);
+                })
+                .toArray(Query[]::new);
+
+        ToDoubleFunction<Query> stream = query -> repository.all()
+                .filter(transaction -> query.accountIds.contains(transaction.getAccount().getId()))
+                .filter(transaction -> transaction.getCreated().getTime() >= query.from && transaction.getCreated().getTime() <= query.to)
+                .mapToDouble(Transaction::getAmount)
+                .sum();
+        ToDoubleFunction<Query> columns = query -> repository.sumInCents(query.accountIds, query.from, query.to) / 100D;
+
+        double[] streamSums = run("stream", stream, queries);
+        double[] columnSums = run("columns", columns, queries);
+        for (int i = 0; i < queries.length; i++)
+            assertThat(columnSums[i], closeTo(streamSums[i], 0.001));
+    }
+
+    private static double[] run(String name, ToDoubleFunction<Query> sum, Query[] queries) {
+        double[] sums = new double[queries.length];
+        for (int i = 0; i < WARMUP_QUERIES; i++)
+            sums[i] = sum.applyAsDouble(queries[i]);
+        long begin = System.nanoTime();
+        for (int i = WARMUP_QUERIES; i < queries.length; i++)
+            sums[i] = sum.applyAsDouble(queries[i]);
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%-8s transactions=%,d processors=%d ms/query=%,10.2f%n", name, TRANSACTIONS,
+                Runtime.getRuntime().availableProcessors(), elapsed / 1_000_000D / QUERIES);
+        return sums;
+    }
+
+    static class Query {
+        final Set<String> accountIds;
+        final long from;
+        final long to;
+
+        Query(Set<String> accountIds, long from, long to) {
+            this.accountIds = accountIds;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
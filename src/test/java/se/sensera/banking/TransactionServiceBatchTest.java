@@ -0,0 +1,188 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+public class TransactionServiceBatchTest {
+
+    TransactionServiceImpl transactionService;
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    TransactionsRepository transactionsRepository;
+    User user;
+    Account account;
+    Account otherAccount;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+        transactionsRepository = new InMemoryTransactionsRepository();
+
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.setLedgerVerification(true);
+
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+        otherAccount = saveAccount(accountsRepository, user, "other");
+    }
+
+    @Test
+    void create_transactions_funds_in_order_success() throws UseException {
+        // Given
+        Account inactiveAccount = saveAccount(accountsRepository, user, "inactive", false);
+        List<TransactionRequest> requests = List.of(
+                new TransactionRequest("2020-01-01 10:34", user.getId(), account.getId(), -50),
+                new TransactionRequest("2020-01-01 10:35", user.getId(), account.getId(), 200),
+                new TransactionRequest("2020-01-01 10:36", user.getId(), otherAccount.getId(), 30),
+                new TransactionRequest("2020-01-01 10:37", user.getId(), account.getId(), -150),
+                new TransactionRequest("2020-01-01 10:38", user.getId(), account.getId(), -51),
+                new TransactionRequest("2020-01-01 10:39", "unknown", account.getId(), 10),
+                new TransactionRequest("2020-01-01 10:40", user.getId(), inactiveAccount.getId(), 10));
+
+        // When
+        List<TransactionResult> results = transactionService.createTransactions(requests);
+
+        // Then
+        assertThat(results.stream().map(TransactionResult::isSuccess).collect(Collectors.toList()),
+                contains(false, true, true, true, false, false, false));
+        assertThat(results.stream().filter(result -> !result.isSuccess()).map(result -> result.getError().getUserExceptionType()).collect(Collectors.toList()),
+                contains(UseExceptionType.NOT_FUNDED, UseExceptionType.NOT_FUNDED, UseExceptionType.USER_NOT_FOUND, UseExceptionType.ACCOUNT_NOT_ACTIVE));
+        assertThat(results.get(3).getTransaction().getAmount(), is(-150D));
+        assertThat(transactionsRepository.all().count(), is(3L));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(50D));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), otherAccount.getId()), is(30D));
+    }
+
+    @Test
+    void create_transactions_commits_in_groups_success() throws UseException {
+        // Given
+        int count = 10_000;
+        List<TransactionRequest> requests = IntStream.range(0, count)
+                .mapToObj(n -> new TransactionRequest("2020-01-01 10:34", user.getId(), n % 2 == 0 ? account.getId() : otherAccount.getId(), 1))
+                .collect(Collectors.toList());
+        transactionService.setLedgerVerification(false);
+
+        // When
+        List<TransactionResult> results = transactionService.createTransactions(requests);
+
+        // Then
+        assertThat(results.stream().allMatch(TransactionResult::isSuccess), is(true));
+        assertThat(transactionsRepository.all().count(), is((long) count));
+        transactionService.setLedgerVerification(true);
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(count / 2D));
+    }
+
+    @Test
+    void create_transactions_reports_invalid_timestamp_failure() throws UseException {
+        // Given
+        List<TransactionRequest> requests = List.of(
+                new TransactionRequest("2020-01-01 10:34", user.getId(), account.getId(), 200),
+                new TransactionRequest("2020-13-01 10:35", user.getId(), account.getId(), 100),
+                new TransactionRequest("2020-01-01 10:36", user.getId(), account.getId(), -50));
+
+        // When
+        List<TransactionResult> results = transactionService.createTransactions(requests);
+
+        // Then
+        assertThat(results.stream().map(TransactionResult::isSuccess).collect(Collectors.toList()), contains(true, false, true));
+        assertThat(results.get(1).getError().getUserExceptionType(), is(UseExceptionType.INVALID_TIMESTAMP));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(150D));
+    }
+
+    @Test
+    void create_transactions_keeps_saved_groups_when_storage_fails_failure() throws UseException {
+        // Given
+        AtomicInteger saves = new AtomicInteger();
+        transactionsRepository = new InMemoryTransactionsRepository() {
+            @Override
+            public Transaction save(Transaction transaction) {
+                if (saves.incrementAndGet() == 5_000)
+                    throw new IllegalStateException("Storage failure");
+                return super.save(transaction);
+            }
+        };
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        List<TransactionRequest> requests = IntStream.range(0, 10_000)
+                .mapToObj(n -> new TransactionRequest("2020-01-01 10:34", user.getId(), account.getId(), 1))
+                .collect(Collectors.toList());
+
+        // When
+        List<TransactionResult> results = transactionService.createTransactions(requests);
+
+        // Then, the first group and the start of the second were saved before the failure, the third group after it
+        List<TransactionResult> failures = results.stream().filter(result -> !result.isSuccess()).collect(Collectors.toList());
+        assertThat(failures.size(), is(8192 - 4999));
+        assertThat(results.get(4998).isSuccess(), is(true));
+        assertThat(results.get(4999).isSuccess(), is(false));
+        assertThat(results.get(8192).isSuccess(), is(true));
+        assertThat(failures.stream().allMatch(result -> result.getError().getUserExceptionType() == UseExceptionType.NOT_SAVED
+                && result.getError().getCause() instanceof IllegalStateException), is(true));
+        assertThat(transactionsRepository.all().count(), is(10_000L - failures.size()));
+        transactionService.setLedgerVerification(true);
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(10_000D - failures.size()));
+    }
+
+    @Test
+    void failed_group_keeps_reservation_of_saved_withdrawal_failure() throws UseException {
+        // Given, a group whose withdrawal is saved and whose deposit is not, and a withdrawal of the whole
+        // balance made while the service sorts out what was saved
+        AtomicInteger saves = new AtomicInteger();
+        AtomicReference<UseExceptionType> refused = new AtomicReference<>();
+        transactionsRepository = new InMemoryTransactionsRepository() {
+            @Override
+            public Transaction save(Transaction transaction) {
+                if (saves.incrementAndGet() == 3)
+                    throw new IllegalStateException("Storage failure");
+                return super.save(transaction);
+            }
+
+            @Override
+            public Optional<Transaction> getEntityById(String id) {
+                if (saves.get() == 3) {
+                    saves.incrementAndGet();
+                    try {
+                        transactionService.createTransaction("2020-01-01 10:40", user.getId(), account.getId(), -100);
+                    } catch (UseException e) {
+                        refused.set(e.getUserExceptionType());
+                    }
+                }
+                return super.getEntityById(id);
+            }
+        };
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 100);
+
+        // When
+        List<TransactionResult> results = transactionService.createTransactions(List.of(
+                new TransactionRequest("2020-01-01 10:35", user.getId(), account.getId(), -60),
+                new TransactionRequest("2020-01-01 10:36", user.getId(), account.getId(), 10)));
+
+        // Then
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(1).getError().getUserExceptionType(), is(UseExceptionType.NOT_SAVED));
+        assertThat(refused.get(), is(UseExceptionType.NOT_FUNDED));
+        transactionService.setLedgerVerification(true);
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(40D));
+    }
+}
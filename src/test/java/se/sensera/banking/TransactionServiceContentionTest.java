@@ -0,0 +1,81 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+/**
+ * Contention benchmark for {@link TransactionServiceImpl}, run with {@code mvn test -Dbenchmark=true}.
+ * Every thread works on its own account, so throughput should grow with the number of threads
+ * up to the number of available cores.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class TransactionServiceContentionTest {
+
+    static final int TRANSACTIONS_PER_THREAD = 2_000;
+    static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+
+    @Test
+    void disjoint_accounts_scale_with_threads() throws Exception {
+        run(THREAD_COUNTS[THREAD_COUNTS.length - 1]); // warm up
+        double singleThreaded = 0;
+        for (int threads : THREAD_COUNTS) {
+            double throughput = run(threads);
+            if (threads == 1)
+                singleThreaded = throughput;
+            double speedup = throughput / singleThreaded;
+            System.out.printf("threads=%2d transactions/s=%,12.0f speedup=%5.2f%n", threads, throughput, speedup);
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            assertThat(speedup, is(greaterThanOrEqualTo(0.5 * Math.min(threads, cores))));
+        }
+    }
+
+    private double run(int threads) throws Exception {
+        UsersRepository usersRepository = new InMemoryUsersRepository();
+        AccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        TransactionService transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new InMemoryTransactionsRepository());
+
+        User user = saveUser(usersRepository);
+        Account[] accounts = IntStream.range(0, threads)
+                .mapToObj(n -> saveAccount(accountsRepository, user, "account " + n))
+                .toArray(Account[]::new);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = IntStream.range(0, threads)
+                    .mapToObj(n -> executor.submit(() -> {
+                        start.await();
+                        String accountId = accounts[n].getId();
+                        for (int i = 0; i < TRANSACTIONS_PER_THREAD; i++)
+                            transactionService.createTransaction("2020-01-01 10:34", user.getId(), accountId, i % 2 == 0 ? 100D : -50D);
+                        return null;
+                    }))
+                    .toArray(Future[]::new);
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures)
+                future.get();
+            long elapsed = System.nanoTime() - begin;
+            return threads * (double) TRANSACTIONS_PER_THREAD * 1_000_000_000L / elapsed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+public class TransactionServiceIdempotencyTest {
+
+    TransactionServiceImpl transactionService;
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    TransactionsRepository transactionsRepository;
+    User user;
+    Account account;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+        transactionsRepository = new InMemoryTransactionsRepository();
+
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.setLedgerVerification(true);
+
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+    }
+
+    @Test
+    void retry_with_idempotency_key_returns_original_success() throws UseException {
+        // Given
+        Transaction transaction = transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        Transaction retried = transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), account.getId(), 200);
+        Transaction other = transactionService.createTransaction("key-2", "2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // Then
+        assertThat(retried, is(sameInstance(transaction)));
+        assertThat(other.getId(), is(not(transaction.getId())));
+        assertThat(transactionsRepository.all().count(), is(2L));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(400D));
+    }
+
+    @Test
+    void concurrent_retries_create_one_transaction_success() throws Exception {
+        // Given
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Transaction>> retries = IntStream.range(0, threads)
+                    .mapToObj(n -> executor.submit(() -> {
+                        start.await();
+                        return transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), account.getId(), 200);
+                    }))
+                    .collect(Collectors.toList());
+
+            // When
+            start.countDown();
+
+            // Then
+            Transaction transaction = retries.get(0).get();
+            for (Future<Transaction> retry : retries)
+                assertThat(retry.get(), is(sameInstance(transaction)));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(transactionsRepository.all().count(), is(1L));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(200D));
+    }
+
+    @Test
+    void same_key_of_two_users_creates_two_transactions_success() throws UseException {
+        // Given
+        User otherUser = saveUser(usersRepository, "Lisa Lisasson", "9283749238473");
+        Account otherUsersAccount = saveAccount(accountsRepository, otherUser, "lisa");
+        Transaction transaction = transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        Transaction otherUsersTransaction = transactionService.createTransaction("key-1", "2020-01-01 10:34", otherUser.getId(), otherUsersAccount.getId(), 300);
+
+        // Then
+        assertThat(otherUsersTransaction.getId(), is(not(transaction.getId())));
+        assertThat(otherUsersTransaction.getAccount(), is(otherUsersAccount));
+        assertThat(transactionsRepository.all().count(), is(2L));
+        assertThat(transactionService.sum("2020-01-01 10:45", otherUser.getId(), otherUsersAccount.getId()), is(300D));
+    }
+
+    @Test
+    void key_reused_for_other_request_failure() throws UseException {
+        // Given
+        Account otherAccount = saveAccount(accountsRepository, user, "other");
+        transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        UseException otherAmount = assertThrows(UseException.class,
+                () -> transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), account.getId(), 250));
+        UseException otherAccountUsed = assertThrows(UseException.class,
+                () -> transactionService.createTransaction("key-1", "2020-01-01 10:34", user.getId(), otherAccount.getId(), 200));
+
+        // Then
+        assertThat(otherAmount.getUserExceptionType(), is(UseExceptionType.IDEMPOTENCY_KEY_REUSED));
+        assertThat(otherAccountUsed.getUserExceptionType(), is(UseExceptionType.IDEMPOTENCY_KEY_REUSED));
+        assertThat(transactionsRepository.all().count(), is(1L));
+    }
+}
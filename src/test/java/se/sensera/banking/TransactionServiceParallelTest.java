@@ -3,8 +3,14 @@ package se.sensera.banking;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.TransactionServiceImpl;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -35,7 +41,7 @@ public class TransactionServiceParallelTest {
         accountsRepository = new TestAccountsRepository();
         transactionsRepository = new TestTransactionsRepository();
 
-        transactionService = null; //TODO create Your implementing class here
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
 
         user = createUser("Arne Arnesson", "9283749238472", true);
         otherUser = createUser("Arne Arnesson", "9283749238472", true);
@@ -156,6 +162,101 @@ public class TransactionServiceParallelTest {
         assertThat(duration, is(lessThanOrEqualTo(5000)));
     }
 
+    @Test
+    void batch_monitor_keeps_account_order_success() throws InterruptedException {
+        // Given
+        String created = "2020-01-01 10:34";
+        final int count = 1000;
+        List<Account> accounts = IntStream.range(0, 10)
+                .mapToObj(n -> createAccount(user, UUID.randomUUID().toString(), true))
+                .collect(Collectors.toList());
+
+        List<Transaction> transactions = new ArrayList<>();
+        transactionService.addBatchMonitor(batch -> {
+            synchronized (transactions) {
+                transactions.addAll(batch);
+                if (transactions.size() == count)
+                    transactions.notifyAll();
+            }
+        }, 64, Duration.ofMillis(10));
+
+        // When
+        accounts.parallelStream()
+                .forEach(account -> IntStream.range(0, count / accounts.size()).forEach(n -> {
+                    try {
+                        transactionService.createTransaction(created, user.getId(), account.getId(), 1D);
+                    } catch (UseException e) {
+                        throw new RuntimeException("Internal error", e);
+                    }
+                }));
+
+        synchronized (transactions) {
+            if (transactions.size() < count)
+                transactions.wait(5000);
+        }
+
+        // Then
+        assertThat(transactions, is(hasSize(count)));
+        accounts.forEach(account -> assertThat(transactionsOf(account, transactions.stream()),
+                contains(transactionsOf(account, transactionsRepository.all()).toArray())));
+    }
+
+    @Test
+    void batch_monitor_keeps_account_order_with_concurrent_writers_success() throws Exception {
+        // Given, a repository that lets other writers run between a save and what follows it
+        transactionsRepository = new TestTransactionsRepository() {
+            @Override
+            public Transaction save(Transaction transaction) {
+                Transaction saved = super.save(transaction);
+                Thread.yield();
+                return saved;
+            }
+        };
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        String created = "2020-01-01 10:34";
+        final int count = 2000;
+        List<Account> accounts = IntStream.range(0, 2)
+                .mapToObj(n -> createAccount(user, UUID.randomUUID().toString(), true))
+                .collect(Collectors.toList());
+
+        List<Transaction> transactions = new ArrayList<>();
+        transactionService.addBatchMonitor(batch -> {
+            synchronized (transactions) {
+                transactions.addAll(batch);
+                if (transactions.size() == count)
+                    transactions.notifyAll();
+            }
+        }, 64, Duration.ofMillis(10));
+
+        // When, eight writers share the two accounts
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Transaction>> creates = IntStream.range(0, count)
+                    .mapToObj(n -> (Callable<Transaction>) () -> transactionService.createTransaction(created, user.getId(), accounts.get(n % 2).getId(), 1D))
+                    .collect(Collectors.toList());
+            for (Future<Transaction> transaction : writers.invokeAll(creates))
+                transaction.get();
+        } finally {
+            writers.shutdownNow();
+        }
+
+        synchronized (transactions) {
+            if (transactions.size() < count)
+                transactions.wait(5000);
+        }
+
+        // Then
+        assertThat(transactions, is(hasSize(count)));
+        accounts.forEach(account -> assertThat(transactionsOf(account, transactions.stream()),
+                contains(transactionsOf(account, transactionsRepository.all()).toArray())));
+    }
+
+    private static List<Transaction> transactionsOf(Account account, Stream<Transaction> transactions) {
+        return transactions
+                .filter(transaction -> transaction.getAccount().getId().equals(account.getId()))
+                .collect(Collectors.toList());
+    }
+
     private Account createAccount(User owner, String name, boolean active, User... users) {
         Account account = mock(Account.class);
         String accountId = UUID.randomUUID().toString();
@@ -0,0 +1,83 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+public class TransactionServicePeriodSumTest {
+
+    TransactionServiceImpl transactionService;
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    User user;
+    Account account;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new InMemoryTransactionsRepository());
+
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+    }
+
+    @Test
+    void period_sum_covers_all_accounts_of_user_success() throws UseException {
+        // Given
+        Account otherAccount = saveAccount(accountsRepository, user, "other");
+        User otherUser = saveUser(usersRepository, "Bosse Bengtsson", "8283749238472");
+        Account sharedAccount = new AccountImpl(otherUser, "shared", UUID.randomUUID().toString(), true);
+        sharedAccount.addUser(user);
+        accountsRepository.save(sharedAccount);
+        Account notSharedAccount = saveAccount(accountsRepository, otherUser, "not shared");
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionService.createTransaction("2020-01-01 10:36", user.getId(), otherAccount.getId(), 50);
+        transactionService.createTransaction("2020-01-01 10:38", user.getId(), sharedAccount.getId(), 30);
+        transactionService.createTransaction("2020-01-01 10:40", user.getId(), account.getId(), -75);
+        transactionService.createTransaction("2020-01-01 10:40", otherUser.getId(), notSharedAccount.getId(), 1000);
+
+        // When
+        long all = transactionService.periodSumInCents(user.getId(), "2020-01-01 00:00", "2020-01-02 00:00");
+        long middle = transactionService.periodSumInCents(user.getId(), "2020-01-01 10:36", "2020-01-01 10:38");
+        long otherUsers = transactionService.periodSumInCents(otherUser.getId(), "2020-01-01 10:35", "2020-01-01 10:40");
+
+        // Then
+        assertThat(all, is(20_500L));
+        assertThat(middle, is(8_000L));
+        assertThat(otherUsers, is(103_000L));
+        assertThat(transactionService.periodSumInCents(user.getId(), "2020-01-01 10:41", "2020-01-01 10:30"), is(0L));
+    }
+
+    @Test
+    void sums_with_invalid_timestamp_failure() {
+        // When
+        UseException sumException = assertThrows(UseException.class,
+                () -> transactionService.sum("2020-02-30 10:34", user.getId(), account.getId()));
+        UseException periodSumException = assertThrows(UseException.class,
+                () -> transactionService.periodSumInCents(user.getId(), "2020-01-01 00:00", "tomorrow"));
+
+        // Then
+        assertThat(sumException.getUserExceptionType(), is(UseExceptionType.INVALID_TIMESTAMP));
+        assertThat(sumException.getActivity(), is(Activity.SUM_TRANSACTION));
+        assertThat(periodSumException.getUserExceptionType(), is(UseExceptionType.INVALID_TIMESTAMP));
+        assertThat(periodSumException.getActivity(), is(Activity.SUM_TRANSACTION));
+    }
+}
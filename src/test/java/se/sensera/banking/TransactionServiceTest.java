@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.TransactionServiceImpl;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -42,7 +43,7 @@ public class TransactionServiceTest {
         accountsRepository = mock(AccountsRepository.class);
         transactionsRepository = mock(TransactionsRepository.class);
 
-        transactionService = null; //TODO create Your implementing class here
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
 
         user = createUser("Arne Arnesson", "9283749238472", true);
         otherUser = createUser("Arne Arnesson", "9283749238472", true);
@@ -164,5 +165,18 @@ public class TransactionServiceTest {
         return user;
     }
 
+    @Test
+    void create_transaction_with_invalid_timestamp_failure() {
+        // Given
+        String created = "2020-01-01 25:34";
+        double amount = 100;
+
+        UseException userException = assertThrows(UseException.class, () -> {
+            transactionService.createTransaction(created, user.getId(), account.getId(), amount);
+        });
 
+        verify(transactionsRepository, never()).save(any());
+        assertThat(userException.getUserExceptionType(), is(UseExceptionType.INVALID_TIMESTAMP));
+        assertThat(userException.getActivity(), is(Activity.CREATE_TRANSACTION));
+    }
 }
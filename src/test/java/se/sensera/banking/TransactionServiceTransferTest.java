@@ -0,0 +1,168 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+public class TransactionServiceTransferTest {
+
+    TransactionServiceImpl transactionService;
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    TransactionsRepository transactionsRepository;
+    User user;
+    Account account;
+    Account otherAccount;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+        transactionsRepository = new InMemoryTransactionsRepository();
+
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.setLedgerVerification(true);
+
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+        otherAccount = saveAccount(accountsRepository, user, "other");
+    }
+
+    @Test
+    void transfer_moves_money_success() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        Transfer transfer = transactionService.transfer("2020-01-01 10:35", user.getId(), account.getId(), otherAccount.getId(), 150);
+
+        // Then
+        assertThat(transfer.getDebit().getAmount(), is(-150D));
+        assertThat(transfer.getDebit().getAccount(), is(account));
+        assertThat(transfer.getCredit().getAmount(), is(150D));
+        assertThat(transfer.getCredit().getAccount(), is(otherAccount));
+        assertThat(transactionService.sum("2020-01-01 10:35", user.getId(), account.getId()), is(50D));
+        assertThat(transactionService.sum("2020-01-01 10:35", user.getId(), otherAccount.getId()), is(150D));
+        assertThat(transactionService.sum("2020-01-01 10:34", user.getId(), otherAccount.getId()), is(0D));
+    }
+
+    @Test
+    void transfer_refused_failure() throws UseException {
+        // Given
+        User otherUser = saveUser(usersRepository, "Lisa Lisasson", "9283749238473");
+        Account inactiveAccount = saveAccount(accountsRepository, user, "inactive", false);
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // Then
+        assertThat(transferFailure(user, account, otherAccount, 201), is(UseExceptionType.NOT_FUNDED));
+        assertThat(transferFailure(otherUser, account, otherAccount, 100), is(UseExceptionType.NOT_ALLOWED));
+        assertThat(transferFailure(user, account, account, 100), is(UseExceptionType.NOT_ALLOWED));
+        assertThat(transferFailure(user, account, otherAccount, -100), is(UseExceptionType.NOT_ALLOWED));
+        assertThat(transferFailure(user, account, inactiveAccount, 100), is(UseExceptionType.ACCOUNT_NOT_ACTIVE));
+        assertThat(transactionsRepository.all().count(), is(1L));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(200D));
+    }
+
+    @Test
+    void transfer_with_failing_credit_save_keeps_neither_leg_failure() throws UseException {
+        // Given, a repository that fails the third save, the credit leg of the transfer
+        useRepository(new FailingTransactionsRepository(3, false));
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        assertThrows(IllegalStateException.class,
+                () -> transactionService.transfer("2020-01-01 10:35", user.getId(), account.getId(), otherAccount.getId(), 150));
+
+        // Then
+        assertThat(transactionsRepository.all().count(), is(1L));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(200D));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), otherAccount.getId()), is(0D));
+        transactionService.transfer("2020-01-01 10:36", user.getId(), account.getId(), otherAccount.getId(), 200);
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), otherAccount.getId()), is(200D));
+    }
+
+    @Test
+    void transfer_with_undeletable_debit_counts_it_failure() throws UseException {
+        // Given, a repository that fails the credit leg and cannot delete the debit leg it saved
+        useRepository(new FailingTransactionsRepository(3, true));
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+                () -> transactionService.transfer("2020-01-01 10:35", user.getId(), account.getId(), otherAccount.getId(), 150));
+
+        // Then
+        assertThat(failure.getSuppressed().length, is(1));
+        assertThat(transactionsRepository.all().count(), is(2L));
+        assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(50D));
+        assertThat(transferFailure(user, account, otherAccount, 51), is(UseExceptionType.NOT_FUNDED));
+    }
+
+    private void useRepository(TransactionsRepository transactionsRepository) {
+        this.transactionsRepository = transactionsRepository;
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.setLedgerVerification(true);
+    }
+
+    private UseExceptionType transferFailure(User user, Account fromAccount, Account toAccount, double amount) {
+        UseException useException = assertThrows(UseException.class,
+                () -> transactionService.transfer("2020-01-01 10:35", user.getId(), fromAccount.getId(), toAccount.getId(), amount));
+        assertThat(useException.getActivity(), is(Activity.TRANSFER));
+        return useException.getUserExceptionType();
+    }
+
+    private static class FailingTransactionsRepository extends InMemoryTransactionsRepository {
+        private final AtomicInteger saves = new AtomicInteger();
+        private final int failingSave;
+        private final boolean failingDelete;
+
+        FailingTransactionsRepository(int failingSave, boolean failingDelete) {
+            this.failingSave = failingSave;
+            this.failingDelete = failingDelete;
+        }
+
+        @Override
+        public Transaction save(Transaction transaction) {
+            if (saves.incrementAndGet() == failingSave)
+                throw new IllegalStateException("Storage failure");
+            return super.save(transaction);
+        }
+
+        @Override
+        public Transaction delete(Transaction transaction) {
+            if (failingDelete)
+                throw new IllegalStateException("Storage failure");
+            return super.delete(transaction);
+        }
+    }
+
+    @Test
+    void transfer_with_invalid_timestamp_failure() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+
+        // When
+        UseException exception = assertThrows(UseException.class,
+                () -> transactionService.transfer("2020-01-01 10:3", user.getId(), account.getId(), otherAccount.getId(), 150));
+
+        // Then
+        assertThat(exception.getUserExceptionType(), is(UseExceptionType.INVALID_TIMESTAMP));
+        assertThat(exception.getActivity(), is(Activity.TRANSFER));
+        assertThat(transactionService.sum("2020-01-01 10:35", user.getId(), account.getId()), is(200D));
+    }
+}
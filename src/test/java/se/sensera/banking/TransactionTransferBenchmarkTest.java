@@ -0,0 +1,89 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.InMemoryAccountsRepository;
+import se.sensera.banking.impl.InMemoryTransactionsRepository;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+/**
+ * Throughput of random transfers between many accounts, run with {@code mvn test -Dbenchmark=true}.
+ * Transfers go in both directions between the same accounts, so this would hang if transfers could deadlock.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class TransactionTransferBenchmarkTest {
+
+    static final int ACCOUNTS = 100_000;
+    static final int THREADS = 32;
+    static final int TRANSFERS_PER_THREAD = 10_000;
+    static final long INITIAL_CENTS = 10_000;
+    static final String CREATED = "2020-01-01 10:34";
+
+    @Test
+    void random_transfers_between_accounts() throws Exception {
+        UsersRepository usersRepository = new InMemoryUsersRepository();
+        AccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new InMemoryTransactionsRepository());
+
+        User user = saveUser(usersRepository);
+        String[] accountIds = IntStream.range(0, ACCOUNTS)
+                .mapToObj(n -> saveAccount(accountsRepository, user, "account " + n).getId())
+                .toArray(String[]::new);
+        for (String accountId : accountIds)
+            transactionService.createTransaction(CREATED, user.getId(), accountId, INITIAL_CENTS / 100D);
+
+        AtomicLong refused = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long elapsed;
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = IntStream.range(0, THREADS)
+                    .mapToObj(thread -> executor.submit(() -> {
+                        Random random = new Random(thread);
+                        start.await();
+                        for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                            String from = accountIds[random.nextInt(ACCOUNTS)];
+                            String to = accountIds[random.nextInt(ACCOUNTS)];
+                            try {
+                                transactionService.transfer(CREATED, user.getId(), from, to, (1 + random.nextInt(15_000)) / 100D);
+                            } catch (UseException e) {
+                                refused.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }))
+                    .toArray(Future[]::new);
+
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures)
+                future.get();
+            elapsed = System.nanoTime() - begin;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.printf("threads=%d accounts=%,d transfers/s=%,12.0f refused=%,d%n", THREADS, ACCOUNTS,
+                THREADS * (double) TRANSFERS_PER_THREAD * 1_000_000_000L / elapsed, refused.get());
+
+        long total = 0;
+        for (String accountId : accountIds)
+            total += transactionService.sumInCents(CREATED, user.getId(), accountId);
+        assertThat(total, is(ACCOUNTS * INITIAL_CENTS));
+    }
+}
@@ -0,0 +1,121 @@
+package se.sensera.banking;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import se.sensera.banking.impl.InMemoryUsersRepository;
+import se.sensera.banking.impl.UserImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class UserServiceFindAfterTest {
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void walk_all_users_by_name_success(UsersRepository usersRepository) {
+        // Given
+        UserService userService = new UserServiceImpl(usersRepository);
+        List<User> users = IntStream.range(0, 25)
+                .mapToObj(n -> usersRepository.save(new UserImpl("id " + (100 + n), "User " + (n % 7), "pid " + (200 - n), true)))
+                .collect(Collectors.toList());
+
+        // When
+        List<User> walked = walk(userService, 4, UserService.SortOrder.Name);
+
+        // Then
+        assertThat(walked, contains(users.stream()
+                .sorted(Comparator.comparing(User::getName).thenComparing(User::getId))
+                .toArray(User[]::new)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void continue_after_concurrent_insert_success(UsersRepository usersRepository) {
+        // Given
+        UserService userService = new UserServiceImpl(usersRepository);
+        Stream.of("Arne", "Beda", "Lisa", "Per").forEach(name -> usersRepository.save(new UserImpl("id " + name, name, "pid " + name, true)));
+
+        // When
+        Page<User> first = userService.findAfter(null, 2, UserService.SortOrder.Name);
+        usersRepository.save(new UserImpl("id Adam", "Adam", "pid Adam", true));
+        Page<User> second = userService.findAfter(first.getNext(), 2, UserService.SortOrder.Name);
+
+        // Then
+        assertThat(names(first), contains("Arne", "Beda"));
+        assertThat(names(second), contains("Lisa", "Per"));
+        assertThat(second.hasNext(), is(false));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideRepositories")
+    void walk_all_users_by_personal_id_after_change_success(UsersRepository usersRepository) {
+        // Given
+        UserService userService = new UserServiceImpl(usersRepository);
+        User arne = usersRepository.save(new UserImpl("1", "Arne", "20011010-1234", true));
+        User lisa = usersRepository.save(new UserImpl("2", "Lisa", "20011010-0234", true));
+
+        // When
+        arne.setPersonalIdentificationNumber("20011010-0034");
+        usersRepository.save(arne);
+
+        // Then
+        assertThat(walk(userService, 1, UserService.SortOrder.PersonalId), contains(arne, lisa));
+    }
+
+    private static List<User> walk(UserService userService, int pageSize, UserService.SortOrder sortOrder) {
+        List<User> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            Page<User> page = userService.findAfter(cursor, pageSize, sortOrder);
+            assertThat(page.getEntities().size(), is(lessThanOrEqualTo(pageSize)));
+            walked.addAll(page.getEntities());
+            cursor = page.getNext();
+        } while (cursor != null);
+        return walked;
+    }
+
+    private static List<String> names(Page<User> page) {
+        return page.getEntities().stream().map(User::getName).collect(Collectors.toList());
+    }
+
+    private static Stream<Arguments> provideRepositories() {
+        return Stream.of(
+                Arguments.of(new InMemoryUsersRepository()),
+                Arguments.of(new UnindexedUsersRepository())
+        );
+    }
+
+    private static class UnindexedUsersRepository implements UsersRepository {
+        private final UsersRepository repository = new InMemoryUsersRepository();
+
+        @Override
+        public Optional<User> getEntityById(String id) {
+            return repository.getEntityById(id);
+        }
+
+        @Override
+        public Stream<User> all() {
+            return repository.all();
+        }
+
+        @Override
+        public User save(User entity) {
+            return repository.save(entity);
+        }
+
+        @Override
+        public User delete(User entity) {
+            return repository.delete(entity);
+        }
+    }
+}
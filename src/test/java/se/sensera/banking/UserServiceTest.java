@@ -5,10 +5,12 @@ import org.junit.jupiter.api.Test;
 import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.InMemoryUsersRepository;
 import se.sensera.banking.impl.UserServiceImpl;
 
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
@@ -220,4 +222,40 @@ public class UserServiceTest {
         assertThat(userException.getUserExceptionType(), is(UseExceptionType.NOT_FOUND));
         assertThat(userException.getActivity(), is(Activity.UPDATE_USER));
     }
+
+    @Test
+    void failed_save_releases_personal_identification_number_success() throws UseException {
+        // Given
+        AtomicBoolean failing = new AtomicBoolean(true);
+        InMemoryUsersRepository usersRepository = new InMemoryUsersRepository() {
+            @Override
+            public User save(User user) {
+                if (failing.get())
+                    throw new IllegalStateException("Storage failure");
+                return super.save(user);
+            }
+        };
+        UserService userService = new UserServiceImpl(usersRepository);
+
+        // When
+        assertThrows(IllegalStateException.class, () -> userService.createUser("Arne", "20011010-1234"));
+        failing.set(false);
+        User lisa = userService.createUser("Lisa", "20011010-0234");
+        failing.set(true);
+        assertThrows(IllegalStateException.class, () -> userService.changeUser(lisa.getId(), changeUser -> {
+            try {
+                changeUser.setPersonalIdentificationNumber("20011010-4321");
+            } catch (UseException e) {
+                throw new RuntimeException("Test failed", e);
+            }
+        }));
+        failing.set(false);
+
+        // Then
+        UniqueIndex<String, String> index = usersRepository.personalIdentificationNumberIndex().orElseThrow();
+        assertThat(index.contains("20011010-1234"), is(false));
+        assertThat(index.contains("20011010-4321"), is(false));
+        assertThat(index.contains("20011010-0234"), is(true));
+        assertThat(userService.createUser("Beda", "20011010-1234").getPersonalIdentificationNumber(), is("20011010-1234"));
+    }
 }
@@ -0,0 +1,210 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionColumns;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+import se.sensera.banking.exceptions.UseException;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+class ColumnarTransactionsRepositoryTest {
+
+    ColumnarTransactionsRepository repository;
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    User user;
+    Account account;
+    Account otherAccount;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ColumnarTransactionsRepository();
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+        otherAccount = saveAccount(accountsRepository, user, "other");
+    }
+
+    @Test
+    void saved_transactions_are_read_back_success() {
+        // When
+        repository.save(new TransactionImpl("t1", new Date(1_577_875_440_123L), user, account, 200.05));
+        repository.save(new TransactionImpl("t2", new Date(1_577_875_500_000L), user, otherAccount, -75));
+
+        // Then
+        Transaction transaction = repository.getEntityById("t1").orElseThrow();
+        assertThat(transaction.getId(), is("t1"));
+        assertThat(transaction.getCreated(), is(new Date(1_577_875_440_123L)));
+        assertThat(transaction.getCreatedEpochMinute(), is(1_577_875_440_123L / 60_000));
+        assertThat(transaction.getAmount(), is(200.05));
+        assertThat(transaction.getAmountInCents(), is(20005L));
+        assertThat(transaction.getUser(), is(sameInstance(user)));
+        assertThat(transaction.getAccount(), is(sameInstance(account)));
+        assertThat(transaction, is(repository.getEntityById("t1").orElseThrow()));
+        assertThat(repository.all().map(Transaction::getId).collect(Collectors.toList()), contains("t1", "t2"));
+        assertThat(repository.getEntityById("t3").isPresent(), is(false));
+    }
+
+    @Test
+    void delete_and_update_success() {
+        // Given
+        repository.save(new TransactionImpl("t1", new Date(1_577_875_440_000L), user, account, 100));
+        repository.save(new TransactionImpl("t2", new Date(1_577_875_500_000L), user, account, 200));
+        repository.save(new TransactionImpl("t3", new Date(1_577_875_560_000L), user, account, 300));
+
+        // When
+        repository.delete(repository.getEntityById("t2").orElseThrow());
+        repository.save(new TransactionImpl("t3", new Date(1_577_875_560_000L), user, otherAccount, 350));
+
+        // Then
+        assertThat(repository.all().map(Transaction::getId).collect(Collectors.toList()), contains("t1", "t3"));
+        assertThat(repository.getEntityById("t2").isPresent(), is(false));
+        assertThat(repository.getEntityById("t3").orElseThrow().getAccount(), is(sameInstance(otherAccount)));
+        assertThat(repository.sumInCents(account.getId(), Long.MAX_VALUE), is(10_000L));
+        assertThat(repository.sumInCents(otherAccount.getId(), Long.MAX_VALUE), is(35_000L));
+    }
+
+    @Test
+    void columns_span_chunks_success() {
+        // Given
+        int count = ColumnarTransactionsRepository.CHUNK_ROWS * 2 + 17;
+        for (int i = 0; i < count; i++)
+            repository.save(new TransactionImpl("t" + i, new Date(i * 60_000L), user, i % 3 == 0 ? otherAccount : account, (i % 200 - 100) / 100D));
+
+        // When
+        long sum = repository.sumInCents(account.getId(), (count - 1000) * 60_000L);
+        List<Long> rows = new ArrayList<>();
+        repository.columns().orElseThrow().forEach((accountId, createdMillis, amountInCents) -> {
+            if (accountId.equals(otherAccount.getId()))
+                rows.add(amountInCents);
+        });
+
+        // Then
+        long expected = 0;
+        for (int i = 0; i <= count - 1000; i++)
+            if (i % 3 != 0)
+                expected += i % 200 - 100;
+        assertThat(sum, is(expected));
+        assertThat(rows.size(), is((count + 2) / 3));
+        assertThat(repository.all().count(), is((long) count));
+        assertThat(repository.getEntityById("t" + (count - 1)).orElseThrow().getCreated(), is(new Date((count - 1) * 60_000L)));
+        assertThat(repository.sumInCents("unknown", Long.MAX_VALUE), is(0L));
+    }
+
+    @Test
+    void service_sums_from_columns_success() throws UseException {
+        // Given
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, repository);
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionService.createTransaction("2020-01-01 10:38", user.getId(), account.getId(), -75.5);
+        transactionService.createTransaction("2020-01-01 10:36", user.getId(), otherAccount.getId(), 50);
+
+        // When, a new service loads its ledger from the columns and verifies its sums against them
+        TransactionServiceImpl reloaded = new TransactionServiceImpl(usersRepository, accountsRepository, repository);
+        reloaded.setLedgerVerification(true);
+
+        // Then
+        TransactionColumns columns = repository.columns().orElseThrow();
+        assertThat(columns, is(sameInstance(repository)));
+        assertThat(reloaded.sum("2020-01-01 10:45", user.getId(), account.getId()), is(124.5));
+        assertThat(reloaded.sum("2020-01-01 10:37", user.getId(), account.getId()), is(200D));
+        assertThat(reloaded.sum("2020-01-01 10:45", user.getId(), otherAccount.getId()), is(50D));
+    }
+
+    @Test
+    void column_sums_match_stream_sums_success() {
+        // Given
+        Random random = new Random(1);
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            accounts.add(saveAccount(accountsRepository, user, "account " + i));
+        int count = ColumnarTransactionsRepository.CHUNK_ROWS * 3 + 5;
+        for (int i = 0; i < count; i++)
+            repository.save(new TransactionImpl("t" + i, new Date(random.nextInt(100_000) * 60_000L), user,
+                    accounts.get(random.nextInt(accounts.size())), (random.nextInt(20_001) - 10_000) / 100D));
+        for (int i = 0; i < 1000; i++)
+            repository.getEntityById("t" + random.nextInt(count)).ifPresent(repository::delete);
+
+        for (int query = 0; query < 20; query++) {
+            // When
+            Set<String> accountIds = accounts.stream()
+                    .filter(account -> random.nextBoolean())
+                    .map(Account::getId)
+                    .collect(Collectors.toSet());
+            long from = random.nextInt(100_000) * 60_000L - random.nextInt(60_000);
+            long to = from + random.nextInt(50_000) * 60_000L;
+            long sum = repository.sumInCents(accountIds, from, to);
+
+            // Then
+            assertThat(sum, is(repository.all()
+                    .filter(transaction -> accountIds.contains(transaction.getAccount().getId()))
+                    .filter(transaction -> transaction.getCreated().getTime() >= from && transaction.getCreated().getTime() <= to)
+                    .mapToLong(Transaction::getAmountInCents)
+                    .sum()));
+        }
+        assertThat(repository.sumInCents(Set.of(), Long.MIN_VALUE, Long.MAX_VALUE), is(0L));
+        assertThat(repository.sumInCents(Set.of(accounts.get(0).getId()), Long.MIN_VALUE, Long.MAX_VALUE),
+                is(repository.sumInCents(accounts.get(0).getId(), Long.MAX_VALUE)));
+    }
+
+    @Test
+    void service_period_sums_from_columns_success() throws UseException {
+        // Given
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, repository);
+        transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+        transactionService.createTransaction("2020-01-01 10:36", user.getId(), otherAccount.getId(), 50);
+        transactionService.createTransaction("2020-01-01 10:38", user.getId(), account.getId(), -75.5);
+
+        // Then
+        assertThat(transactionService.periodSumInCents(user.getId(), "2020-01-01 10:00", "2020-01-01 11:00"), is(17_450L));
+        assertThat(transactionService.periodSumInCents(user.getId(), "2020-01-01 10:35", "2020-01-01 10:38"), is(-2_550L));
+        assertThat(transactionService.periodSumInCents(user.getId(), "2020-01-01 10:34", "2020-01-01 10:34"), is(20_000L));
+    }
+
+    @Test
+    void sum_during_rewrite_to_new_account_success() {
+        // Given, a query whose account ids rewrite a row to an account numbered after the sum sized its
+        // selection
+        repository.save(new TransactionImpl("t1", new Date(1_577_875_440_000L), user, account, 100));
+        repository.save(new TransactionImpl("t2", new Date(1_577_875_500_000L), user, account, 200));
+        Account newAccount = saveAccount(accountsRepository, user, "new");
+        Collection<String> accountIds = new AbstractCollection<>() {
+            @Override
+            public Iterator<String> iterator() {
+                repository.save(new TransactionImpl("t2", new Date(1_577_875_500_000L), user, newAccount, 200));
+                return List.of(account.getId()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return 1;
+            }
+        };
+
+        // When
+        long sum = repository.sumInCents(accountIds, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        // Then
+        assertThat(sum, is(10_000L));
+        assertThat(repository.getEntityById("t2").orElseThrow().getAccount(), is(sameInstance(newAccount)));
+    }
+}
@@ -0,0 +1,74 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class HashMultiIndexTest {
+
+    User arne = new UserImpl("1", "Arne", "20011010-1234", true);
+    User lisa = new UserImpl("2", "Lisa", "20011010-1235", true);
+    HashMultiIndex<Account, String, String> index = new HashMultiIndex<>(account -> Stream.concat(Stream.of(account.getOwner()), account.getUsers())
+            .map(User::getId));
+
+    @Test
+    void keys_follow_saves_and_deletes_success() {
+        // Given
+        Account first = new AccountImpl(arne, "first", "a1", true);
+        Account second = new AccountImpl(arne, "second", "a2", true);
+        second.addUser(lisa);
+        index.saved(first.getId(), first);
+        index.saved(second.getId(), second);
+
+        // When
+        second.removeUser(lisa);
+        first.addUser(lisa);
+        index.saved(first.getId(), first);
+        index.saved(second.getId(), second);
+        index.deleted(second.getId(), second);
+
+        // Then
+        assertThat(index.idsOf("1").collect(Collectors.toList()), containsInAnyOrder("a1"));
+        assertThat(index.idsOf("2").collect(Collectors.toList()), containsInAnyOrder("a1"));
+        assertThat(index.idsOf("3").collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    void concurrent_adds_and_removes_of_one_key_success() throws InterruptedException {
+        // Given, accounts that keep adding and removing the same user, so that the user's set of ids keeps
+        // becoming empty and being created again
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Account account = new AccountImpl(arne, "account " + t, "a" + t, true);
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 20_000; n++) {
+                    account.addUser(lisa);
+                    index.saved(account.getId(), account);
+                    account.removeUser(lisa);
+                    index.saved(account.getId(), account);
+                }
+                account.addUser(lisa);
+                index.saved(account.getId(), account);
+            }));
+        }
+
+        // When
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        // Then
+        assertThat(index.idsOf("2").collect(Collectors.toList()), containsInAnyOrder("a0", "a1", "a2", "a3"));
+    }
+}
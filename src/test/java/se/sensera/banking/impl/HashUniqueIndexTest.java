@@ -0,0 +1,84 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.UniqueIndex;
+import se.sensera.banking.User;
+import se.sensera.banking.UserService;
+import se.sensera.banking.exceptions.UseException;
+
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class HashUniqueIndexTest {
+
+    InMemoryUsersRepository usersRepository;
+    UniqueIndex<String, String> index;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        index = usersRepository.personalIdentificationNumberIndex().orElseThrow();
+    }
+
+    @Test
+    void claim_and_release_success() {
+        assertThat(index.claim("20011010-1234", "1"), is(true));
+        assertThat(index.claim("20011010-1234", "1"), is(true));
+        assertThat(index.claim("20011010-1234", "2"), is(false));
+
+        index.release("20011010-1234", "2");
+        assertThat(index.contains("20011010-1234"), is(true));
+
+        index.release("20011010-1234", "1");
+        assertThat(index.contains("20011010-1234"), is(false));
+        assertThat(index.claim("20011010-1234", "2"), is(true));
+    }
+
+    @Test
+    void save_moves_key_success() {
+        // Given
+        UserImpl user = new UserImpl("1", "Arne", "20011010-1234", true);
+        usersRepository.save(user);
+
+        // When
+        user.setPersonalIdentificationNumber("20011010-0234");
+        usersRepository.save(user);
+
+        // Then
+        assertThat(index.contains("20011010-1234"), is(false));
+        assertThat(index.contains("20011010-0234"), is(true));
+
+        // When
+        usersRepository.delete(user);
+
+        // Then
+        assertThat(index.contains("20011010-0234"), is(false));
+    }
+
+    @Test
+    void concurrent_create_user_with_same_pid_only_one_succeeds() {
+        // Given
+        UserService userService = new UserServiceImpl(usersRepository);
+
+        // When
+        long created = IntStream.range(0, 100)
+                .parallel()
+                .mapToObj(n -> {
+                    try {
+                        return userService.createUser("Arne " + n, "20011010-1234");
+                    } catch (UseException e) {
+                        return null;
+                    }
+                })
+                .filter(Objects::nonNull)
+                .count();
+
+        // Then
+        assertThat(created, is(1L));
+        assertThat(usersRepository.all().count(), is(1L));
+    }
+}
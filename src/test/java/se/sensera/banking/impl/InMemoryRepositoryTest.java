@@ -0,0 +1,131 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionsRepository;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class InMemoryRepositoryTest {
+
+    UsersRepository usersRepository;
+    User arne;
+    User lisa;
+    User beda;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        arne = usersRepository.save(new UserImpl("1", "Arne", "9384538975", true));
+        lisa = usersRepository.save(new UserImpl("2", "Lisa", "9384538976", true));
+        beda = usersRepository.save(new UserImpl("3", "Beda", "9384538977", true));
+    }
+
+    @Test
+    void get_entity_by_id_success() {
+        assertThat(usersRepository.getEntityById("2").orElseThrow(), is(sameInstance(lisa)));
+        assertThat(usersRepository.getEntityById("4").isPresent(), is(false));
+    }
+
+    @Test
+    void all_in_insertion_order_success() {
+        // When
+        User changedLisa = usersRepository.save(new UserImpl("2", "Lisa Gunnarsson", "9384538976", true));
+
+        // Then
+        assertThat(usersRepository.all().collect(Collectors.toList()), contains(arne, changedLisa, beda));
+        assertThat(usersRepository.getEntityById("2").orElseThrow(), is(sameInstance(changedLisa)));
+    }
+
+    @Test
+    void delete_success() {
+        // When
+        usersRepository.delete(lisa);
+
+        // Then
+        assertThat(usersRepository.all().collect(Collectors.toList()), contains(arne, beda));
+        assertThat(usersRepository.getEntityById("2").isPresent(), is(false));
+    }
+
+    @Test
+    void all_sees_entities_saved_while_iterating() {
+        // Given
+        Iterator<User> users = usersRepository.all().iterator();
+        users.next();
+
+        // When
+        List<User> saved = IntStream.range(4, 10)
+                .mapToObj(n -> usersRepository.save(new UserImpl(String.valueOf(n), "User " + n, "pid " + n, true)))
+                .collect(Collectors.toList());
+
+        // Then
+        int remaining = 0;
+        while (users.hasNext()) {
+            users.next();
+            remaining++;
+        }
+        assertThat(remaining, is(2 + saved.size()));
+    }
+
+    @Test
+    void accounts_and_transactions_success() {
+        // Given
+        AccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        TransactionsRepository transactionsRepository = new InMemoryTransactionsRepository();
+
+        // When
+        Account account = accountsRepository.save(new AccountImpl(arne, "default", "a1", true));
+        Transaction transaction = transactionsRepository.save(new TransactionImpl("t1", new Date(0), arne, account, 100));
+
+        // Then
+        assertThat(accountsRepository.getEntityById("a1").orElseThrow(), is(sameInstance(account)));
+        assertThat(transactionsRepository.getEntityById("t1").orElseThrow(), is(sameInstance(transaction)));
+        assertThat(transactionsRepository.delete(transaction), is(sameInstance(transaction)));
+        assertThat(transactionsRepository.all().count(), is(0L));
+    }
+
+    @Test
+    void accounts_of_user_in_insertion_order_success() {
+        // Given
+        AccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        List<Account> accounts = IntStream.range(0, 50)
+                .mapToObj(n -> accountsRepository.save(new AccountImpl(arne, "account " + n, "a" + (50 - n), true)))
+                .collect(Collectors.toList());
+        Account shared = accountsRepository.save(new AccountImpl(lisa, "shared", "a0", true));
+        shared.addUser(arne);
+
+        // When
+        accountsRepository.save(shared);
+        accountsRepository.delete(accounts.get(10));
+
+        // Then
+        List<Account> expected = accounts.stream().filter(account -> account != accounts.get(10)).collect(Collectors.toList());
+        expected.add(shared);
+        assertThat(accountsRepository.accountsByUserIndex().orElseThrow().find(arne.getId()).collect(Collectors.toList()), is(expected));
+    }
+
+    @Test
+    void parallel_saves_success() {
+        // When
+        List<User> saved = IntStream.range(4, 10_004)
+                .parallel()
+                .mapToObj(n -> usersRepository.save(new UserImpl(String.valueOf(n), "User " + n, "pid " + n, true)))
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(usersRepository.all().count(), is(3L + saved.size()));
+        saved.forEach(user -> assertThat(usersRepository.getEntityById(user.getId()).orElseThrow(), is(sameInstance(user))));
+    }
+}
@@ -0,0 +1,206 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static se.sensera.banking.TestEntities.saveAccount;
+import static se.sensera.banking.TestEntities.saveUser;
+
+class JournalTransactionsRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    User user;
+    Account account;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        accountsRepository = new InMemoryAccountsRepository();
+        user = saveUser(usersRepository);
+        account = saveAccount(accountsRepository, user, "default");
+    }
+
+    @Test
+    void saved_transactions_are_read_back_success() {
+        // Given
+        try (JournalTransactionsRepository repository = open()) {
+            // When
+            repository.save(transaction("t1", 1_577_875_440_123L, 200.05));
+            repository.saveAll(List.of(transaction("t2", 1_577_875_500_000L, -75), transaction("t3", 1_577_875_560_000L, 0.01)));
+
+            // Then
+            Transaction transaction = repository.getEntityById("t1").orElseThrow();
+            assertThat(transaction.getCreated(), is(new Date(1_577_875_440_123L)));
+            assertThat(transaction.getAmount(), is(200.05));
+            assertThat(transaction.getAmountInCents(), is(20005L));
+            assertThat(transaction.getUser(), is(sameInstance(user)));
+            assertThat(transaction.getAccount(), is(sameInstance(account)));
+            assertThat(ids(repository), contains("t1", "t2", "t3"));
+            assertThat(repository.getEntityById("t4").isPresent(), is(false));
+        }
+    }
+
+    @Test
+    void transactions_survive_reopen_success() {
+        // Given
+        try (JournalTransactionsRepository repository = new JournalTransactionsRepository(directory, usersRepository,
+                accountsRepository, FsyncPolicy.NONE, Duration.ZERO)) {
+            for (int i = 0; i < JournalTransactionsRepository.SEGMENT_RECORDS + 10; i++)
+                repository.saveAll(List.of(transaction("t" + i, 1_577_875_440_000L + i, i)));
+        }
+
+        // When
+        try (JournalTransactionsRepository repository = open()) {
+            // Then
+            assertThat(repository.all().count(), is(JournalTransactionsRepository.SEGMENT_RECORDS + 10L));
+            assertThat(repository.getEntityById("t" + JournalTransactionsRepository.SEGMENT_RECORDS).orElseThrow().getAmountInCents(),
+                    is(JournalTransactionsRepository.SEGMENT_RECORDS * 100L));
+
+            repository.save(transaction("last", 1_577_875_440_000L, 1));
+            assertThat(repository.all().reduce((first, second) -> second).orElseThrow().getId(), is("last"));
+        }
+    }
+
+    @Test
+    void torn_record_is_dropped_on_reopen_success() throws Exception {
+        // Given, a journal where the last record was only partly written when the process died
+        try (JournalTransactionsRepository repository = open()) {
+            repository.save(transaction("t1", 1_577_875_440_000L, 100));
+            repository.save(transaction("t2", 1_577_875_500_000L, 200));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("transactions-00000000.journal").toFile(), "rw")) {
+            file.seek(JournalTransactionsRepository.RECORD_SIZE + 12);
+            file.writeLong(123);
+        }
+
+        // When
+        try (JournalTransactionsRepository repository = open()) {
+            // Then
+            assertThat(ids(repository), contains("t1"));
+            repository.save(transaction("t3", 1_577_875_560_000L, 300));
+        }
+        try (JournalTransactionsRepository repository = open()) {
+            assertThat(ids(repository), contains("t1", "t3"));
+        }
+    }
+
+    @Test
+    void delete_and_update_are_kept_success() {
+        // Given
+        try (JournalTransactionsRepository repository = open()) {
+            repository.save(transaction("t1", 1_577_875_440_000L, 100));
+            repository.save(transaction("t2", 1_577_875_500_000L, 200));
+            repository.save(transaction("t3", 1_577_875_560_000L, 300));
+
+            // When
+            repository.delete(repository.getEntityById("t2").orElseThrow());
+            repository.save(transaction("t3", 1_577_875_560_000L, 350));
+        }
+
+        // Then
+        try (JournalTransactionsRepository repository = open()) {
+            assertThat(ids(repository), contains("t1", "t3"));
+            assertThat(repository.getEntityById("t2").isPresent(), is(false));
+            assertThat(repository.getEntityById("t3").orElseThrow().getAmount(), is(350D));
+        }
+    }
+
+    @Test
+    void torn_update_keeps_earlier_records_success() throws Exception {
+        // Given, a journal where an update of the first transaction was only partly written when the process died,
+        // after the first record had already been marked as replaced
+        try (JournalTransactionsRepository repository = open()) {
+            repository.save(transaction("t1", 1_577_875_440_000L, 100));
+            repository.save(transaction("t2", 1_577_875_500_000L, 200));
+            repository.save(transaction("t3", 1_577_875_560_000L, 300));
+            repository.save(transaction("t1", 1_577_875_440_000L, 150));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("transactions-00000000.journal").toFile(), "rw")) {
+            file.seek(3 * JournalTransactionsRepository.RECORD_SIZE + 12);
+            file.writeLong(123);
+        }
+
+        // When
+        try (JournalTransactionsRepository repository = open()) {
+            // Then
+            assertThat(ids(repository), contains("t1", "t2", "t3"));
+            assertThat(repository.getEntityById("t1").orElseThrow().getAmount(), is(100D));
+            repository.save(transaction("t1", 1_577_875_440_000L, 175));
+        }
+        try (JournalTransactionsRepository repository = open()) {
+            assertThat(ids(repository), contains("t2", "t3", "t1"));
+            assertThat(repository.getEntityById("t1").orElseThrow().getAmount(), is(175D));
+        }
+    }
+
+    @Test
+    void too_long_id_failure() {
+        try (JournalTransactionsRepository repository = open()) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> repository.save(transaction("x".repeat(JournalTransactionsRepository.MAX_ID_LENGTH + 1), 0, 1)));
+            assertThat(repository.all().count(), is(0L));
+        }
+    }
+
+    @Test
+    void service_balances_are_kept_after_reopen_success() throws UseException {
+        // Given
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            Path policyDirectory = directory.resolve(policy.name());
+            try (JournalTransactionsRepository repository = new JournalTransactionsRepository(policyDirectory, usersRepository,
+                    accountsRepository, policy, Duration.ofMillis(10))) {
+                TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, repository);
+                transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 200);
+                transactionService.createTransaction("2020-01-01 10:38", user.getId(), account.getId(), -75.5);
+            }
+
+            // When
+            try (JournalTransactionsRepository repository = new JournalTransactionsRepository(policyDirectory, usersRepository,
+                    accountsRepository, policy, Duration.ofMillis(10))) {
+                TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, repository);
+                transactionService.setLedgerVerification(true);
+
+                // Then
+                assertThat(transactionService.sum("2020-01-01 10:45", user.getId(), account.getId()), is(124.5));
+                assertThat(transactionService.sum("2020-01-01 10:35", user.getId(), account.getId()), is(200D));
+                UseException useException = assertThrows(UseException.class,
+                        () -> transactionService.createTransaction("2020-01-01 10:50", user.getId(), account.getId(), -125));
+                assertThat(useException.getUserExceptionType(), is(UseExceptionType.NOT_FUNDED));
+            }
+        }
+    }
+
+    private JournalTransactionsRepository open() {
+        return new JournalTransactionsRepository(directory, usersRepository, accountsRepository);
+    }
+
+    private Transaction transaction(String id, long created, double amount) {
+        return new TransactionImpl(id, new Date(created), user, account, amount);
+    }
+
+    private static List<String> ids(JournalTransactionsRepository repository) {
+        return repository.all().map(Transaction::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,325 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.User;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class MonitorDispatcherTest {
+
+    List<Integer> received = new ArrayList<>();
+    CountDownLatch receiving = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    void block_delivers_all_in_order_success() throws InterruptedException {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(receiver(), 4, MonitorDispatcher.BackpressurePolicy.BLOCK);
+        release.countDown();
+
+        // When
+        IntStream.range(0, 100).forEach(dispatcher::publish);
+
+        // Then
+        awaitDelivered(dispatcher, 100);
+        assertThat(received(), is(range(0, 100)));
+        assertThat(dispatcher.metrics(), is(new MonitorMetrics(100, 100, 0, 0, 0, 0)));
+    }
+
+    @Test
+    void drop_oldest_keeps_latest_without_waiting_success() throws InterruptedException {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(receiver(), 4, MonitorDispatcher.BackpressurePolicy.DROP_OLDEST);
+        dispatcher.publish(-1);
+        receiving.await(5, TimeUnit.SECONDS);
+
+        // When
+        IntStream.range(0, 100).forEach(dispatcher::publish);
+        MonitorMetrics lagging = dispatcher.metrics();
+        release.countDown();
+
+        // Then
+        assertThat(lagging.getLag(), is(5L));
+        assertThat(lagging.getDropped(), is(96L));
+        awaitDelivered(dispatcher, 5);
+        assertThat(received(), is(List.of(-1, 96, 97, 98, 99)));
+    }
+
+    @Test
+    void spill_delivers_all_in_order_without_waiting_success() throws InterruptedException {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(receiver(), 4, MonitorDispatcher.BackpressurePolicy.SPILL);
+
+        // When
+        IntStream.range(0, 100).forEach(dispatcher::publish);
+        MonitorMetrics lagging = dispatcher.metrics();
+        release.countDown();
+
+        // Then
+        assertThat(lagging.getLag() >= 95, is(true));
+        awaitDelivered(dispatcher, 100);
+        assertThat(received(), is(range(0, 100)));
+        assertThat(dispatcher.metrics().getDropped(), is(0L));
+    }
+
+    @Test
+    void batch_delivers_full_batches_in_order_success() throws InterruptedException {
+        // Given
+        List<List<Integer>> batches = new ArrayList<>();
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<Integer>(batch -> {
+            synchronized (batches) {
+                batches.add(batch);
+            }
+        }, 10, Duration.ofSeconds(5), 4, MonitorDispatcher.BackpressurePolicy.BLOCK);
+
+        // When
+        IntStream.range(0, 100).forEach(dispatcher::publish);
+
+        // Then
+        awaitDelivered(dispatcher, 100);
+        synchronized (batches) {
+            assertThat(batches.size(), is(10));
+            assertThat(batches.stream().flatMap(List::stream).collect(Collectors.toList()), is(range(0, 100)));
+        }
+    }
+
+    @Test
+    void batch_delivers_partial_batch_after_delay_success() throws InterruptedException {
+        // Given
+        List<List<Integer>> batches = new ArrayList<>();
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<Integer>(batch -> {
+            synchronized (batches) {
+                batches.add(batch);
+            }
+        }, 10, Duration.ofMillis(20), 16, MonitorDispatcher.BackpressurePolicy.BLOCK);
+
+        // When
+        IntStream.range(0, 3).forEach(dispatcher::publish);
+
+        // Then
+        awaitDelivered(dispatcher, 3);
+        synchronized (batches) {
+            assertThat(batches, is(List.of(range(0, 3))));
+        }
+    }
+
+    @Test
+    void failing_monitor_keeps_receiving_success() throws InterruptedException {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(n -> {
+            if (n % 2 == 0)
+                throw new IllegalStateException("Monitor failed");
+        }, 4, MonitorDispatcher.BackpressurePolicy.BLOCK);
+
+        // When
+        IntStream.range(0, 10).forEach(dispatcher::publish);
+
+        // Then
+        awaitDelivered(dispatcher, 10);
+        assertThat(dispatcher.metrics().getFailed(), is(5L));
+    }
+
+    @Test
+    void monitor_throwing_error_keeps_receiving_success() throws InterruptedException {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(n -> {
+            if (n % 2 == 0)
+                throw new AssertionError("Monitor failed");
+        }, 4, MonitorDispatcher.BackpressurePolicy.BLOCK);
+
+        // When
+        IntStream.range(0, 100).forEach(dispatcher::publish);
+
+        // Then
+        awaitDelivered(dispatcher, 100);
+        assertThat(dispatcher.metrics().getFailed(), is(50L));
+    }
+
+    @Test
+    void close_delivers_published_and_stops_success() {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(receiver(), 4, MonitorDispatcher.BackpressurePolicy.SPILL);
+        IntStream.range(0, 10).forEach(dispatcher::publish);
+        release.countDown();
+
+        // When
+        dispatcher.close();
+        dispatcher.publish(10);
+
+        // Then
+        assertThat(received(), is(range(0, 10)));
+        assertThat(dispatcher.metrics().getDelivered(), is(10L));
+        assertThat(dispatcher.metrics().getDropped(), is(1L));
+        assertThat(dispatcher.metrics().getLag(), is(0L));
+    }
+
+    @Test
+    void close_wakes_blocked_publisher_success() throws InterruptedException {
+        // Given
+        MonitorDispatcher<Integer> dispatcher = new MonitorDispatcher<>(receiver(), 1, MonitorDispatcher.BackpressurePolicy.BLOCK);
+        dispatcher.publish(0);
+        receiving.await(5, TimeUnit.SECONDS);
+        dispatcher.publish(1);
+        Thread publisher = new Thread(() -> dispatcher.publish(2));
+        publisher.start();
+        while (publisher.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        // When
+        Thread closer = new Thread(dispatcher::close);
+        closer.start();
+        publisher.join(5000);
+        release.countDown();
+        closer.join(5000);
+
+        // Then
+        assertThat(publisher.isAlive(), is(false));
+        assertThat(closer.isAlive(), is(false));
+        assertThat(received(), is(range(0, 2)));
+        assertThat(dispatcher.metrics().getDropped(), is(1L));
+    }
+
+    @Test
+    void service_close_stops_monitors_success() throws Exception {
+        // Given
+        InMemoryUsersRepository usersRepository = new InMemoryUsersRepository();
+        InMemoryAccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        User user = usersRepository.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+        Account account = accountsRepository.save(new AccountImpl(user, "default", "a1", true));
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new InMemoryTransactionsRepository());
+        List<Transaction> monitored = new ArrayList<>();
+        transactionService.addMonitor(transaction -> {
+            synchronized (monitored) {
+                monitored.add(transaction);
+            }
+        });
+        Transaction before = transactionService.createTransaction("2020-01-01 10:34", user.getId(), account.getId(), 100);
+
+        // When
+        transactionService.close();
+        transactionService.createTransaction("2020-01-01 10:35", user.getId(), account.getId(), 100);
+
+        // Then
+        synchronized (monitored) {
+            assertThat(monitored, is(List.of(before)));
+        }
+        assertThat(transactionService.monitorMetrics(), is(List.of()));
+    }
+
+    @Test
+    void blocked_monitor_does_not_hold_up_commits_success() throws Exception {
+        // Given, a monitor with room for one transaction that is stuck on the first, and a thread waiting to
+        // hand it the third
+        InMemoryUsersRepository usersRepository = new InMemoryUsersRepository();
+        InMemoryAccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        User user = usersRepository.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+        Account account = accountsRepository.save(new AccountImpl(user, "default", "a1", true));
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new InMemoryTransactionsRepository());
+        List<Transaction> monitored = new ArrayList<>();
+        transactionService.addMonitor(transaction -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            synchronized (monitored) {
+                monitored.add(transaction);
+            }
+        }, 1, MonitorDispatcher.BackpressurePolicy.BLOCK);
+        List<Transaction> created = new ArrayList<>();
+        Thread creator = new Thread(() -> IntStream.range(0, 3).forEach(n -> {
+            try {
+                created.add(transactionService.createTransaction("2020-01-01 10:3" + n, user.getId(), account.getId(), 100));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        creator.start();
+        while (transactionService.monitorMetrics().get(0).getPublished() < 3 || creator.getState() != Thread.State.WAITING)
+            Thread.sleep(1);
+
+        // When
+        Transaction last = transactionService.createTransaction("2020-01-01 10:39", user.getId(), account.getId(), 100);
+        release.countDown();
+        creator.join(5000);
+        transactionService.close();
+
+        // Then
+        created.add(last);
+        synchronized (monitored) {
+            assertThat(monitored, is(created));
+        }
+    }
+
+    @Test
+    void monitor_creating_transactions_does_not_deadlock_success() throws Exception {
+        // Given, a monitor with room for one transaction that creates a transaction on the same account for
+        // every deposit it is given
+        InMemoryUsersRepository usersRepository = new InMemoryUsersRepository();
+        InMemoryAccountsRepository accountsRepository = new InMemoryAccountsRepository();
+        User user = usersRepository.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+        Account account = accountsRepository.save(new AccountImpl(user, "default", "a1", true));
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new InMemoryTransactionsRepository());
+        CountDownLatch withdrawn = new CountDownLatch(20);
+        transactionService.addMonitor(transaction -> {
+            if (transaction.getAmountInCents() > 0) {
+                try {
+                    transactionService.createTransaction("2020-01-01 11:00", user.getId(), account.getId(), -1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            } else
+                withdrawn.countDown();
+        }, 1, MonitorDispatcher.BackpressurePolicy.BLOCK);
+
+        // When
+        for (int n = 0; n < 20; n++)
+            transactionService.createTransaction("2020-01-01 10:00", user.getId(), account.getId(), 1);
+
+        // Then
+        assertThat(withdrawn.await(5, TimeUnit.SECONDS), is(true));
+        transactionService.close();
+    }
+
+    private Consumer<Integer> receiver() {
+        return n -> {
+            try {
+                receiving.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            synchronized (received) {
+                received.add(n);
+            }
+        };
+    }
+
+    private List<Integer> received() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private static void awaitDelivered(MonitorDispatcher<?> dispatcher, long delivered) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.metrics().getDelivered() < delivered && System.nanoTime() < deadline)
+            Thread.sleep(1);
+    }
+}
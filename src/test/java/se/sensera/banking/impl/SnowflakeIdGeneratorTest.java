@@ -0,0 +1,84 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void ids_are_unique_under_concurrency_success() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+
+        List<String> ids = IntStream.range(0, 100_000).parallel()
+                .mapToObj(n -> generator.nextId())
+                .collect(Collectors.toList());
+
+        assertThat(new HashSet<>(ids).size(), is(ids.size()));
+    }
+
+    @Test
+    void ids_sort_in_generation_order_success() {
+        // Given, a clock that stands still and then goes backwards
+        long[] now = {SnowflakeIdGenerator.EPOCH_MILLIS + 1000};
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1023, () -> now[0]);
+
+        // When
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            ids.add(generator.nextId());
+        now[0] -= 500;
+        ids.add(generator.nextId());
+
+        // Then
+        assertThat(ids, is(ids.stream().sorted().collect(Collectors.toList())));
+        assertThat(new HashSet<>(ids).size(), is(ids.size()));
+        assertThat(ids.get(0).length(), is(13));
+    }
+
+    @Test
+    void threads_take_ids_from_own_lanes_success() throws InterruptedException {
+        // Given, a clock that stands still
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5, () -> SnowflakeIdGenerator.EPOCH_MILLIS + 1000);
+        List<List<Long>> idsByThread = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            List<Long> ids = new ArrayList<>();
+            idsByThread.add(ids);
+            threads.add(new Thread(() -> IntStream.range(0, 5_000).forEach(n -> ids.add(generator.nextLong()))));
+        }
+
+        // When
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        // Then
+        List<Long> all = idsByThread.stream().flatMap(List::stream).collect(Collectors.toList());
+        assertThat(new HashSet<>(all).size(), is(all.size()));
+        for (int t = 0; t < threads.size(); t++) {
+            List<Long> ids = idsByThread.get(t);
+            int lane = (int) threads.get(t).getId() & ((1 << SnowflakeIdGenerator.LANE_BITS) - 1);
+            assertThat(ids, is(ids.stream().sorted().collect(Collectors.toList())));
+            assertThat(ids.stream().allMatch(id -> (id >>> SnowflakeIdGenerator.NODE_BITS & ((1 << SnowflakeIdGenerator.LANE_BITS) - 1)) == lane), is(true));
+        }
+    }
+
+    @Test
+    void id_carries_timestamp_success() {
+        long millis = SnowflakeIdGenerator.EPOCH_MILLIS + 123_456_789;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, () -> millis);
+
+        assertThat(SnowflakeIdGenerator.timestampOf(generator.nextLong()), is(millis));
+        assertThat(SnowflakeIdGenerator.encode(0), is("0000000000000"));
+        assertThat(SnowflakeIdGenerator.encode(-1L >>> 1), is("7ZZZZZZZZZZZZ"));
+    }
+}
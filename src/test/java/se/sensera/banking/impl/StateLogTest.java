@@ -0,0 +1,303 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.Account;
+import se.sensera.banking.User;
+import se.sensera.banking.exceptions.UseException;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StateLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void users_and_accounts_survive_reopen_success() throws UseException {
+        // Given
+        String arneId;
+        String accountId;
+        try (Repositories repositories = new Repositories(directory)) {
+            UserServiceImpl userService = new UserServiceImpl(repositories.users);
+            AccountServiceImpl accountService = new AccountServiceImpl(repositories.users, repositories.accounts);
+
+            User arne = userService.createUser("Arne Arnesson", "9283749238472");
+            User bosse = userService.createUser("Bosse Bengtsson", "8283749238472");
+            User åsa = userService.createUser("Åsa Öberg", "7283749238472");
+            arneId = arne.getId();
+            userService.changeUser(bosse.getId(), changeUser -> changeUser.setName("Bo Bengtsson"));
+            userService.inactivateUser(åsa.getId());
+
+            Account account = accountService.createAccount(arneId, "default");
+            accountId = account.getId();
+            accountService.addUserToAccount(arneId, accountId, bosse.getId());
+            accountService.addUserToAccount(arneId, accountId, åsa.getId());
+            accountService.removeUserFromAccount(arneId, accountId, åsa.getId());
+            Account other = accountService.createAccount(bosse.getId(), "other");
+            accountService.inactivateAccount(bosse.getId(), other.getId());
+        }
+
+        // When
+        try (Repositories repositories = new Repositories(directory)) {
+            // Then
+            assertThat(repositories.replayed, is(11L));
+            assertThat(repositories.users.all().map(User::getName).collect(Collectors.toList()),
+                    contains("Arne Arnesson", "Bo Bengtsson", "Åsa Öberg"));
+            assertThat(repositories.users.all().map(User::isActive).collect(Collectors.toList()), contains(true, true, false));
+            Account account = repositories.accounts.getEntityById(accountId).orElseThrow();
+            assertThat(account.getName(), is("default"));
+            assertThat(account.getOwner(), is(sameInstance(repositories.users.getEntityById(arneId).orElseThrow())));
+            assertThat(account.getUsers().map(User::getName).collect(Collectors.toList()), contains("Bo Bengtsson"));
+            assertThat(repositories.accounts.all().map(Account::isActive).collect(Collectors.toList()), contains(true, false));
+
+            // The indexes are rebuilt as well
+            String bosseId = repositories.users.all().skip(1).findFirst().orElseThrow().getId();
+            assertThat(repositories.users.personalIdentificationNumberIndex().orElseThrow().claim("8283749238472", arneId), is(false));
+            assertThat(repositories.accounts.accountsByUserIndex().orElseThrow().find(bosseId).map(Account::getName).collect(Collectors.toList()),
+                    containsInAnyOrder("default", "other"));
+
+            // and the log goes on where it was
+            new UserServiceImpl(repositories.users).createUser("Cilla Carlsson", "6283749238472");
+        }
+        try (Repositories repositories = new Repositories(directory)) {
+            assertThat(repositories.replayed, is(12L));
+            assertThat(repositories.users.all().count(), is(4L));
+        }
+    }
+
+    @Test
+    void torn_entry_is_dropped_on_reopen_success() throws Exception {
+        // Given, a log where the last entry was only partly written when the process died
+        try (Repositories repositories = new Repositories(directory)) {
+            repositories.users.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+            repositories.users.save(new UserImpl("u2", "Bosse Bengtsson", "8283749238472", true));
+        }
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        // When
+        try (Repositories repositories = new Repositories(directory)) {
+            // Then
+            assertThat(repositories.replayed, is(1L));
+            assertThat(repositories.users.all().map(User::getId).collect(Collectors.toList()), contains("u1"));
+            repositories.users.save(new UserImpl("u3", "Cilla Carlsson", "6283749238472", true));
+        }
+        try (Repositories repositories = new Repositories(directory)) {
+            assertThat(repositories.users.all().map(User::getId).collect(Collectors.toList()), contains("u1", "u3"));
+            assertThat(repositories.stateLog.lastLsn(), is(2L));
+        }
+    }
+
+    @Test
+    void save_before_replay_failure() {
+        try (StateLog stateLog = new StateLog(directory)) {
+            InMemoryUsersRepository users = new InMemoryUsersRepository(stateLog);
+
+            assertThrows(IllegalStateException.class, () -> users.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true)));
+        }
+    }
+
+    @Test
+    void save_that_cannot_be_logged_changes_nothing_failure() {
+        // Given
+        Repositories repositories = new Repositories(directory);
+        repositories.users.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+        repositories.close();
+
+        // When
+        assertThrows(IllegalStateException.class, () -> repositories.users.save(new UserImpl("u1", "Arne Arnesson", "123", true)));
+        assertThrows(IllegalStateException.class, () -> repositories.users.save(new UserImpl("u2", "Bosse Bengtsson", "456", true)));
+
+        // Then
+        assertThat(repositories.users.personalIdentificationNumberIndex().orElseThrow().contains("123"), is(false));
+        assertThat(repositories.users.personalIdentificationNumberIndex().orElseThrow().contains("456"), is(false));
+        assertThat(repositories.users.personalIdentificationNumberIndex().orElseThrow().contains("9283749238472"), is(true));
+        assertThat(repositories.users.getEntityById("u1").orElseThrow().getPersonalIdentificationNumber(), is("9283749238472"));
+        assertThat(repositories.users.all().map(User::getId).collect(Collectors.toList()), contains("u1"));
+    }
+
+    @Test
+    void snapshot_replaces_log_success() throws Exception {
+        // Given
+        try (Repositories repositories = new Repositories(directory)) {
+            User arne = repositories.users.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+            User bosse = repositories.users.save(new UserImpl("u2", "Bosse Bengtsson", "8283749238472", true));
+            Account account = new AccountImpl(arne, "default", "a1", true);
+            account.addUser(bosse);
+            repositories.accounts.save(account);
+            repositories.users.save(new UserImpl("u3", "Cilla Carlsson", "6283749238472", true));
+
+            // When
+            assertThat(repositories.stateLog.snapshot(repositories.users, repositories.accounts), is(4L));
+            bosse.setName("Bo Bengtsson");
+            repositories.users.save(bosse);
+            repositories.accounts.save(new AccountImpl(bosse, "other", "a2", true));
+        }
+
+        // Then
+        assertThat(segments().stream().map(path -> path.getFileName().toString()).collect(Collectors.toList()),
+                contains("state-00000000000000000004.snapshot", "state-00000000000000000005.log"));
+        try (Repositories repositories = new Repositories(directory)) {
+            assertThat(repositories.replayed, is(4L + 2L));
+            assertThat(repositories.stateLog.lastLsn(), is(6L));
+            assertThat(describe(repositories), contains(
+                    "account a1 u1 default true [u2]",
+                    "account a2 u2 other true []",
+                    "user u1 Arne Arnesson 9283749238472 true",
+                    "user u2 Bo Bengtsson 8283749238472 true",
+                    "user u3 Cilla Carlsson 6283749238472 true"));
+        }
+    }
+
+    @Test
+    void snapshot_while_saving_success() throws Exception {
+        // Given
+        List<String> expected;
+        try (Repositories repositories = new Repositories(directory)) {
+            Thread writer = new Thread(() -> {
+                Random random = new Random(1);
+                for (int n = 0; n < 2_000; n++) {
+                    User user = repositories.users.save(new UserImpl("u" + n, "User " + n, "pid" + n, true));
+                    Account account = new AccountImpl(user, "account " + n, "a" + n, true);
+                    if (n > 0)
+                        account.addUser(repositories.users.getEntityById("u" + random.nextInt(n)).orElseThrow());
+                    repositories.accounts.save(account);
+                    User renamed = repositories.users.getEntityById("u" + random.nextInt(n + 1)).orElseThrow();
+                    renamed.setName("User " + n + " renamed");
+                    repositories.users.save(renamed);
+                    if (n % 7 == 0)
+                        repositories.accounts.getEntityById("a" + random.nextInt(n + 1)).ifPresent(repositories.accounts::delete);
+                }
+            });
+            writer.start();
+
+            // When
+            int snapshots = 0;
+            while (writer.isAlive()) {
+                repositories.stateLog.snapshot(repositories.users, repositories.accounts);
+                snapshots++;
+            }
+            writer.join();
+            assertThat(snapshots, is(greaterThan(1)));
+            expected = describe(repositories);
+        }
+
+        // Then
+        try (Repositories repositories = new Repositories(directory)) {
+            assertThat(describe(repositories), is(expected));
+        }
+    }
+
+    @Test
+    void snapshot_waits_for_logged_save_success() throws Exception {
+        // Given, a save that has been logged but is not yet in the repository
+        CountDownLatch logged = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (StateLog stateLog = new StateLog(directory)) {
+            InMemoryUsersRepository users = new InMemoryUsersRepository(stateLog) {
+                {
+                    addIndex(new EntityIndex<User, String>() {
+                        @Override
+                        public void saved(String id, User user) {
+                            logged.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+
+                        @Override
+                        public void deleted(String id, User user) {
+                        }
+                    });
+                }
+            };
+            InMemoryAccountsRepository accounts = new InMemoryAccountsRepository(stateLog);
+            stateLog.replay(users, accounts);
+            Thread saver = new Thread(() -> users.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true)));
+            saver.start();
+            logged.await();
+
+            // When
+            Thread snapshotter = new Thread(() -> stateLog.snapshot(users, accounts));
+            snapshotter.start();
+            snapshotter.join(200);
+            release.countDown();
+            saver.join();
+            snapshotter.join();
+        }
+
+        // Then
+        try (Repositories repositories = new Repositories(directory)) {
+            assertThat(repositories.users.all().map(User::getId).collect(Collectors.toList()), contains("u1"));
+        }
+    }
+
+    @Test
+    void periodic_snapshots_success() throws Exception {
+        try (Repositories repositories = new Repositories(directory)) {
+            repositories.users.save(new UserImpl("u1", "Arne Arnesson", "9283749238472", true));
+
+            repositories.stateLog.startSnapshots(repositories.users, repositories.accounts, Duration.ofMillis(10));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (segments().stream().noneMatch(path -> path.toString().endsWith(".snapshot")) && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertThat(segments().stream().map(path -> path.getFileName().toString()).collect(Collectors.toList()),
+                    hasItem("state-00000000000000000001.snapshot"));
+        }
+    }
+
+    private static List<String> describe(Repositories repositories) {
+        return Stream.concat(
+                repositories.users.all()
+                        .map(user -> String.join(" ", "user", user.getId(), user.getName(), user.getPersonalIdentificationNumber(), String.valueOf(user.isActive()))),
+                repositories.accounts.all()
+                        .map(account -> String.join(" ", "account", account.getId(), account.getOwner().getId(), account.getName(),
+                                String.valueOf(account.isActive()), account.getUsers().map(User::getId).sorted().collect(Collectors.toList()).toString())))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> segments() throws Exception {
+        try (var files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    static class Repositories implements AutoCloseable {
+        final StateLog stateLog;
+        final InMemoryUsersRepository users;
+        final InMemoryAccountsRepository accounts;
+        final long replayed;
+
+        Repositories(Path directory) {
+            stateLog = new StateLog(directory);
+            users = new InMemoryUsersRepository(stateLog);
+            accounts = new InMemoryAccountsRepository(stateLog);
+            replayed = stateLog.replay(users, accounts);
+        }
+
+        @Override
+        public void close() {
+            stateLog.close();
+        }
+    }
+}
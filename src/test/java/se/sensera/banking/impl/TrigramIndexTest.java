@@ -0,0 +1,91 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.LookupIndex;
+import se.sensera.banking.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class TrigramIndexTest {
+
+    InMemoryUsersRepository usersRepository;
+    LookupIndex<String, User> index;
+    UserImpl arne;
+    UserImpl arnold;
+    UserImpl lisa;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new InMemoryUsersRepository();
+        arne = (UserImpl) usersRepository.save(new UserImpl("1", "Arne Anka", "20011010-1234", true));
+        arnold = (UserImpl) usersRepository.save(new UserImpl("2", "Arnold Ankeborg", "20011010-1235", true));
+        lisa = (UserImpl) usersRepository.save(new UserImpl("3", "Lisa Lund", "20011010-1236", true));
+        index = usersRepository.nameSearchIndex().orElseThrow();
+    }
+
+    @Test
+    void find_substring_success() {
+        assertThat(index.find("ank").collect(Collectors.toList()), contains(arne, arnold));
+        assertThat(index.find("nold ank").collect(Collectors.toList()), contains(arnold));
+        assertThat(index.find("a l").collect(Collectors.toList()), contains(lisa));
+        assertThat(index.find("ankan").collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    void find_short_and_upper_case_text_success() {
+        assertThat(index.find("a").collect(Collectors.toList()), contains(arne, arnold, lisa));
+        assertThat(index.find("").collect(Collectors.toList()), contains(arne, arnold, lisa));
+        assertThat(index.find("Ank").collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    void find_follows_rename_and_delete_success() {
+        // When
+        arne.setName("Beda Borg");
+        usersRepository.save(arne);
+        usersRepository.delete(lisa);
+
+        // Then
+        assertThat(index.find("ank").collect(Collectors.toList()), contains(arnold));
+        assertThat(index.find("borg").collect(Collectors.toList()), contains(arne, arnold));
+        assertThat(index.find("beda b").collect(Collectors.toList()), contains(arne));
+        assertThat(index.find("lund").collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    void concurrent_renames_sharing_trigrams_success() throws InterruptedException {
+        // Given, users that keep renaming to and from names sharing trigrams, so that the postings of those
+        // trigrams keep becoming empty and being created again
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            UserImpl user = (UserImpl) usersRepository.save(new UserImpl("u" + t, "Cilla " + t, "20011010-200" + t, true));
+            threads.add(new Thread(() -> {
+                for (int n = 0; n < 20_000; n++) {
+                    user.setName("Zorro Zeta");
+                    usersRepository.save(user);
+                    user.setName("Cilla " + n);
+                    usersRepository.save(user);
+                }
+                user.setName("Zorro Zeta");
+                usersRepository.save(user);
+            }));
+        }
+
+        // When
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        // Then
+        assertThat(index.find("zorro").map(User::getId).collect(Collectors.toList()), contains("u0", "u1", "u2", "u3"));
+    }
+}
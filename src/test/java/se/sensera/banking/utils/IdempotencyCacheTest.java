@@ -0,0 +1,100 @@
+package se.sensera.banking.utils;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotencyCacheTest {
+
+    AtomicLong clock = new AtomicLong();
+    AtomicInteger executions = new AtomicInteger();
+    IdempotencyCache<String, Integer> cache = new IdempotencyCache<>(3, Duration.ofNanos(100), clock::get);
+
+    @Test
+    void same_key_returns_first_result_success() {
+        assertThat(cache.computeIfAbsent("a", executions::incrementAndGet), is(1));
+        assertThat(cache.computeIfAbsent("a", executions::incrementAndGet), is(1));
+        assertThat(cache.computeIfAbsent("b", executions::incrementAndGet), is(2));
+        assertThat(executions.get(), is(2));
+    }
+
+    @Test
+    void failure_is_not_remembered_failure() throws UseException {
+        assertThrows(UseException.class, () -> cache.computeIfAbsent("a", () -> {
+            throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_FUNDED);
+        }));
+
+        assertThat(cache.computeIfAbsent("a", executions::incrementAndGet), is(1));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    void expired_and_oldest_keys_are_forgotten_success() {
+        // Given
+        cache.computeIfAbsent("a", executions::incrementAndGet);
+        clock.set(50);
+        cache.computeIfAbsent("b", executions::incrementAndGet);
+        cache.computeIfAbsent("c", executions::incrementAndGet);
+
+        // When
+        cache.computeIfAbsent("d", executions::incrementAndGet);
+
+        // Then, a is forgotten for room
+        assertThat(cache.size(), is(3));
+        assertThat(cache.computeIfAbsent("a", executions::incrementAndGet), is(5));
+
+        // When
+        clock.set(160);
+
+        // Then, all expired
+        assertThat(cache.computeIfAbsent("b", executions::incrementAndGet), is(6));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    void failed_keys_do_not_grow_memory_failure() {
+        // Given
+        cache.computeIfAbsent("a", executions::incrementAndGet);
+
+        // When, a client keeps retrying a failing operation with new keys
+        IntStream.range(0, 1000).forEach(n -> assertThrows(IllegalStateException.class, () -> cache.computeIfAbsent("failing " + n, () -> {
+            throw new IllegalStateException("Operation failed");
+        })));
+
+        // Then
+        assertThat(cache.queued() <= 3, is(true));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    void concurrent_callers_run_once_success() {
+        // Given
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>(1000, Duration.ofMinutes(1));
+
+        // When
+        List<Integer> results = IntStream.range(0, 100).parallel()
+                .mapToObj(n -> cache.computeIfAbsent("a", () -> {
+                    LockSupport.parkNanos(Duration.ofMillis(10).toNanos());
+                    return executions.incrementAndGet();
+                }))
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(executions.get(), is(1));
+        assertThat(results, everyItem(is(1)));
+    }
+}
@@ -3,8 +3,11 @@ package se.sensera.banking.utils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -68,4 +71,69 @@ class ListUtilsTest {
         assertThat(rs, is(empty()));
     }
 
-}
\ No newline at end of file
+    @Test
+    void pageNumber_med_pageSize_sista_sidan_success() {
+        // When
+        List<Integer> rs = ListUtils.applyPage(list.stream(), 3, 3).collect(Collectors.toList());
+
+        assertThat(rs, contains(9));
+    }
+
+    @Test
+    void page_läser_inte_förbi_sidans_slut_success() {
+        // Given
+        AtomicInteger pulled = new AtomicInteger();
+
+        // When
+        List<Integer> rs = ListUtils.applyPage(Stream.iterate(0, n -> n + 1).peek(n -> pulled.incrementAndGet()), 1, 5)
+                .collect(Collectors.toList());
+
+        assertThat(rs, contains(5, 6, 7, 8, 9));
+        assertThat(pulled.get(), is(10));
+    }
+
+    @Test
+    void negativ_pageNumber_success() {
+        // When
+        List<Integer> rs = ListUtils.applyPage(list.stream(), -1, 5).collect(Collectors.toList());
+
+        assertThat(rs, is(empty()));
+    }
+
+    @Test
+    void sorterad_page_success() {
+        // When
+        List<Integer> rs = ListUtils.applySortedPage(Stream.of(7, 3, 9, 0, 5, 1, 8, 2, 6, 4), Comparator.reverseOrder(), 1, 3)
+                .collect(Collectors.toList());
+
+        assertThat(rs, contains(6, 5, 4));
+    }
+
+    @Test
+    void sorterad_page_behåller_ordning_för_lika_success() {
+        // When
+        List<String> rs = ListUtils.applySortedPage(Stream.of("b1", "a1", "b2", "a2", "b3", "a3"), Comparator.comparing(s -> s.charAt(0)), 0, 4)
+                .collect(Collectors.toList());
+
+        assertThat(rs, contains("a1", "a2", "a3", "b1"));
+    }
+
+    @Test
+    void sorterad_page_utan_pageSize_success() {
+        // When
+        List<Integer> rs = ListUtils.applySortedPage(Stream.of(3, 1, 2), Comparator.naturalOrder(), null, null)
+                .collect(Collectors.toList());
+
+        assertThat(rs, contains(1, 2, 3));
+    }
+
+    @Test
+    void sorterad_djup_page_success() {
+        // When
+        List<Integer> rs = ListUtils.applySortedPage(IntStream.range(0, 30_000).map(n -> 29_999 - n).boxed(), Comparator.naturalOrder(), 2_000, 10)
+                .collect(Collectors.toList());
+
+        assertThat(rs, contains(20_000, 20_001, 20_002, 20_003, 20_004, 20_005, 20_006, 20_007, 20_008, 20_009));
+    }
+
+}
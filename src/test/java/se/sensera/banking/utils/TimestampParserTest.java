@@ -0,0 +1,63 @@
+package se.sensera.banking.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TimestampParserTest {
+    static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @ParameterizedTest
+    @ValueSource(strings = {"UTC", "Europe/Stockholm", "America/New_York", "Asia/Kolkata"})
+    void parse_matches_java_time_success(String zone) {
+        // Given
+        ZoneId zoneId = ZoneId.of(zone);
+        TimestampParser parser = new TimestampParser(zoneId);
+        LocalDateTime start = LocalDateTime.of(1899, 12, 31, 0, 0);
+
+        // Then, every 37 hours and 13 minutes over some 250 years, crossing leap days and daylight saving switches
+        IntStream.range(0, 60_000)
+                .mapToObj(n -> start.plusMinutes(n * (37L * 60 + 13)))
+                .map(FORMAT::format)
+                .forEach(timestamp -> assertThat(timestamp, parser.parseEpochMinute(timestamp),
+                        is(TimeUnit.SECONDS.toMinutes(LocalDateTime.parse(timestamp, FORMAT).atZone(zoneId).toEpochSecond()))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2021-03-28 02:30", "2021-10-31 02:30", "2020-02-29 23:59", "2020-01-01 10:34"})
+    void parse_daylight_saving_switches_success(String timestamp) {
+        ZoneId zoneId = ZoneId.of("Europe/Stockholm");
+        TimestampParser parser = new TimestampParser(zoneId);
+
+        assertThat(parser.parseEpochMinute(timestamp),
+                is(TimeUnit.SECONDS.toMinutes(LocalDateTime.parse(timestamp, FORMAT).atZone(zoneId).toEpochSecond())));
+        assertThat(parser.parseEpochMinute(timestamp), is(parser.parseEpochMinute(new String(timestamp))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "2020-01-01", "2020-01-01 10:3", "2020-01-01T10:34", "2020-13-01 10:34", "2021-02-29 10:34",
+            "2020-01-00 10:34", "2020-01-01 24:00", "2020-01-01 10:60", "2020-0a-01 10:34", "2020-01-01 10:34 "})
+    void parse_invalid_failure(String timestamp) {
+        TimestampParser parser = new TimestampParser(ZoneId.of("UTC"));
+
+        assertThrows(IllegalArgumentException.class, () -> parser.parseEpochMinute(timestamp));
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 59_999, 60_000, 60_001, -1, -60_000, -60_001})
+    void epoch_minute_at_or_after_success(long epochMillis) {
+        long epochMinute = TimestampParser.epochMinuteAtOrAfter(epochMillis);
+
+        assertThat(TimestampParser.toEpochMillis(epochMinute) >= epochMillis, is(true));
+        assertThat(TimestampParser.toEpochMillis(epochMinute - 1) < epochMillis, is(true));
+    }
+}